@@ -18,6 +18,7 @@
 */
 package controllers.elasticsearch;
 
+import play.modules.elasticsearch.ElasticSearchPlugin;
 import play.mvc.Controller;
 
 /**
@@ -32,4 +33,11 @@ public class ElasticSearchAdmin extends Controller {
 		render();
 	}
 
+	/**
+	 * Indexing metrics as JSON.
+	 */
+	public static void metrics() {
+		renderJSON(ElasticSearchPlugin.getMetrics().toJson().toString());
+	}
+
 }
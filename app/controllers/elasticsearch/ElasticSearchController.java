@@ -36,12 +36,14 @@ import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 
 import play.Play;
+import play.cache.Cache;
 import play.data.validation.MaxSize;
 import play.data.validation.Password;
 import play.data.validation.Required;
 import play.db.Model;
 import play.exceptions.TemplateNotFoundException;
 import play.modules.elasticsearch.ElasticSearch;
+import play.modules.elasticsearch.MultiQuery;
 import play.modules.elasticsearch.Query;
 import play.modules.elasticsearch.search.SearchResults;
 import play.mvc.Before;
@@ -92,10 +94,23 @@ public class ElasticSearchController extends Controller {
 		if (page < 1) {
 			page = 1;
 		}
-		SearchResults<Model> results = type.findPage(page, search, searchFields, orderBy, order, (String) request.args.get("where"));
+		String where = (String) request.args.get("where");
+		Query<Model> pageQuery = type.createPageQuery(page, search, searchFields, orderBy, order, where);
+
+		// Fetch the page and the unfiltered total with a single request, unless the total is cached
+		SearchResults<Model> results;
+		Long totalCount = type.getCachedTotalCount(where);
+		if (totalCount != null) {
+			results = pageQuery.fetch();
+		} else {
+			Query<Model> totalQuery = type.createQuery(null, null, where).size(0);
+			MultiQuery multiQuery = ElasticSearch.multiQuery().add(pageQuery).add(totalQuery).fetch();
+			results = multiQuery.getResults(pageQuery);
+			totalCount = multiQuery.getResults(totalQuery).totalCount;
+			type.cacheTotalCount(where, totalCount);
+		}
 		List<Model> objects = results.objects;
 		Long count = results.totalCount;
-		Long totalCount = type.count(null, null, (String) request.args.get("where"));
 		try {
 			render(type, objects, count, totalCount, page, orderBy, order);
 		} catch (TemplateNotFoundException e) {
@@ -162,6 +177,15 @@ public class ElasticSearchController extends Controller {
 		return Integer.parseInt(Play.configuration.getProperty("elasticsearch.mashup.pageSize", "30"));
 	}
 
+	/**
+	 * Gets how long the unfiltered total of a type is cached.
+	 *
+	 * @return the expiration, e.g. 10s, null to count on every search
+	 */
+	static String getTotalCountExpiration() {
+		return Play.configuration.getProperty("elasticsearch.mashup.totalCountExpiration");
+	}
+
 	/**
 	 * The Class ObjectType.
 	 */
@@ -336,12 +360,57 @@ public class ElasticSearchController extends Controller {
 		 * @return the long
 		 */
 		public Long count(String search, String searchFields, String where) {
-			BoolQueryBuilder qb = buildQueryBuilder(search, searchFields, where);			
-			Query<?> query = ElasticSearch.query(qb, entityClass);
-			query.from(0).size(0);
-			SearchResults<?> result = query.fetch();
-			
-			return result.totalCount;
+			return createQuery(search, searchFields, where).count();
+		}
+
+		/**
+		 * Gets the cached unfiltered total.
+		 *
+		 * @param where the where
+		 * @return the total, null if not cached
+		 */
+		public Long getCachedTotalCount(String where) {
+			if (getTotalCountExpiration() == null) {
+				return null;
+			}
+			return Cache.get(getTotalCountKey(where), Long.class);
+		}
+
+		/**
+		 * Caches the unfiltered total, if configured with elasticsearch.mashup.totalCountExpiration.
+		 *
+		 * @param where the where
+		 * @param totalCount the total
+		 */
+		public void cacheTotalCount(String where, Long totalCount) {
+			String expiration = getTotalCountExpiration();
+			if (expiration != null) {
+				Cache.set(getTotalCountKey(where), totalCount, expiration);
+			}
+		}
+
+		/**
+		 * Gets the cache key of the unfiltered total.
+		 *
+		 * @param where the where
+		 * @return the key
+		 */
+		private String getTotalCountKey(String where) {
+			return "elasticsearch.totalCount." + entityClass.getName() + "." + where;
+		}
+
+		/**
+		 * Creates a query.
+		 *
+		 * @param search the search
+		 * @param searchFields the search fields
+		 * @param where the where
+		 * @return the query
+		 */
+		@SuppressWarnings("unchecked")
+		public <M extends Model> Query<M> createQuery(String search, String searchFields, String where) {
+			BoolQueryBuilder qb = buildQueryBuilder(search, searchFields, where);
+			return (Query<M>) ElasticSearch.query(qb, entityClass);
 		}
 
 		/**
@@ -355,15 +424,29 @@ public class ElasticSearchController extends Controller {
 		 * @param where the where
 		 * @return the list
 		 */
-		@SuppressWarnings("unchecked")
 		public <M extends Model> SearchResults<M> findPage(int page, String search, String searchFields, String orderBy, String order, String where) {
-			BoolQueryBuilder qb = buildQueryBuilder(search, searchFields, where);			
-			Query<M> query = (Query<M>) ElasticSearch.query(qb, entityClass);
+			Query<M> query = createPageQuery(page, search, searchFields, orderBy, order, where);
+			return query.fetch();
+		}
+
+		/**
+		 * Creates the query of a page.
+		 *
+		 * @param page the page
+		 * @param search the search
+		 * @param searchFields the search fields
+		 * @param orderBy the order by
+		 * @param order the order
+		 * @param where the where
+		 * @return the query
+		 */
+		public <M extends Model> Query<M> createPageQuery(int page, String search, String searchFields, String orderBy, String order, String where) {
+			Query<M> query = createQuery(search, searchFields, where);
 			// FIXME Currently we ignore the orderBy and order fields
 			query.from((page - 1) * getPageSize()).size(getPageSize());
 			query.hydrate(true);
-			
-			return query.fetch();
+
+			return query;
 		}
 
 		/**
@@ -0,0 +1,108 @@
+package play.modules.elasticsearch;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+
+import play.Logger;
+import play.db.jpa.JPA;
+import play.modules.elasticsearch.annotations.ElasticSearchEmbedded;
+import play.modules.elasticsearch.annotations.ElasticSearchEmbedded.Fetch;
+import play.modules.elasticsearch.util.ExceptionUtil;
+import play.modules.elasticsearch.util.ReflectionUtil;
+
+/**
+ * Loads the associations of a page of models which are embedded with <code>fetch = Fetch.batch</code>, with one fetch
+ * join query per association, so serializing the page does not load them model by model.
+ */
+abstract class BatchFetcher {
+
+	/** Batch fetched associations by model class */
+	private static final Map<Class<?>, List<String>> associations = new ConcurrentHashMap<Class<?>, List<String>>();
+
+	private BatchFetcher() {
+		// No public instantiation allowed
+	}
+
+	/**
+	 * Loads the batch fetched associations of models into the current persistence context
+	 *
+	 * @param clazz
+	 *            the model class
+	 * @param models
+	 *            the models, managed by the current entity manager
+	 */
+	static void fetch(Class<?> clazz, List<?> models) {
+		if (models.isEmpty()) {
+			return;
+		}
+
+		EntityManager em = JPA.em();
+		String entityName = em.getMetamodel().entity(clazz).getName();
+		for (String association : getAssociations(clazz)) {
+			try {
+				em.createQuery(
+						"select distinct e from " + entityName + " e left join fetch e." + association
+								+ " where e in (:models)").setParameter("models", models).getResultList();
+			} catch (RuntimeException e) {
+				// The models are still loaded one by one
+				Logger.warn("Elastic Search - could not batch fetch %s.%s: %s", clazz.getName(), association,
+						ExceptionUtil.getStackTrace(e));
+			}
+		}
+	}
+
+	/**
+	 * Forgets the associations found so far, e.g. when the application classes are reloaded
+	 */
+	static void clearCache() {
+		associations.clear();
+	}
+
+	/**
+	 * Gets the batch fetched associations of a class
+	 *
+	 * @param clazz
+	 *            the model class
+	 * @return the association names
+	 */
+	static List<String> getAssociations(Class<?> clazz) {
+		List<String> names = associations.get(clazz);
+		if (names == null) {
+			names = findAssociations(clazz);
+			associations.put(clazz, names);
+		}
+		return names;
+	}
+
+	private static List<String> findAssociations(Class<?> clazz) {
+		EntityType<?> entity = JPA.em().getMetamodel().entity(clazz);
+		List<String> names = new ArrayList<String>();
+		for (Field field : ReflectionUtil.getFieldsWithAnnotation(clazz, ElasticSearchEmbedded.class)) {
+			if (field.getAnnotation(ElasticSearchEmbedded.class).fetch() != Fetch.batch) {
+				continue;
+			}
+
+			Attribute<?, ?> attribute;
+			try {
+				attribute = entity.getAttribute(field.getName());
+			} catch (IllegalArgumentException e) {
+				Logger.warn("Elastic Search - %s.%s is not persistent, cannot batch fetch it", clazz.getName(),
+						field.getName());
+				continue;
+			}
+			if (attribute.isAssociation() || attribute.isCollection()) {
+				names.add(field.getName());
+			}
+		}
+		return names.isEmpty() ? Collections.<String> emptyList() : Collections.unmodifiableList(names);
+	}
+
+}
@@ -0,0 +1,13 @@
+package play.modules.elasticsearch;
+
+/**
+ * Handler which processes events locally, sending them to Elastic Search in bulk requests
+ */
+public class BulkIndexEventHandler extends LocalIndexEventHandler {
+
+	@Override
+	protected ElasticSearchIndexer createIndexer(IndexEventQueue queue) {
+		return new ElasticSearchBulkIndexer(queue);
+	}
+
+}
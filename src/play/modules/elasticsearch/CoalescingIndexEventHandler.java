@@ -0,0 +1,147 @@
+package play.modules.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import play.Logger;
+import play.modules.elasticsearch.util.ExceptionUtil;
+
+/**
+ * Handler which coalesces events for the same document (index/type/id) within a time window before passing them on to
+ * another handler.
+ * 
+ * <p>Only the latest event of a document survives the window: repeated INDEX events collapse to the latest one, an
+ * INDEX followed by a DELETE collapses to a single DELETE. An UPDATE following any other event of the same document
+ * collapses to an INDEX, since the changes of the earlier event would be lost otherwise.
+ * 
+ * <p>Events are held in memory until the window closes, so a journaling delegate only makes them durable after that.
+ */
+public class CoalescingIndexEventHandler implements IndexEventHandler {
+
+	/** The handler which receives the coalesced events */
+	private final IndexEventHandler delegate;
+
+	/** The coalescing window in milliseconds */
+	private final long window;
+
+	/** Pending events by document key, guarded by this */
+	private final Map<String, ElasticSearchIndexEvent> pending = new LinkedHashMap<String, ElasticSearchIndexEvent>();
+
+	/** Flag that indicates if a flush has been scheduled, guarded by this */
+	private boolean flushScheduled = false;
+
+	/** Number of events saved by coalescing */
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	/** Scheduler which flushes the pending events */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "elasticsearch-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Instantiates a new coalescing handler.
+	 * 
+	 * @param delegate
+	 *            the handler which receives the coalesced events
+	 * @param window
+	 *            the coalescing window in milliseconds
+	 */
+	public CoalescingIndexEventHandler(IndexEventHandler delegate, long window) {
+		this.delegate = delegate;
+		this.window = window;
+	}
+
+	@Override
+	public void handle(ElasticSearchIndexEvent event) {
+		String key = event.getDocumentKey();
+
+		synchronized (this) {
+			ElasticSearchIndexEvent previous = pending.put(key, event);
+			if (previous != null) {
+				coalescedCount.incrementAndGet();
+
+				if (event.getType() == ElasticSearchIndexEvent.Type.UPDATE) {
+					pending.put(key, event.asIndex());
+				}
+			}
+
+			if (scheduler.isShutdown()) {
+				// Closed, pass the event on when leaving the lock
+			} else if (flushScheduled == false) {
+				scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				}, window, TimeUnit.MILLISECONDS);
+				flushScheduled = true;
+			}
+		}
+
+		if (scheduler.isShutdown()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Passes all pending events on to the delegate
+	 */
+	public void flush() {
+		List<ElasticSearchIndexEvent> events;
+		synchronized (this) {
+			events = new ArrayList<ElasticSearchIndexEvent>(pending.values());
+			pending.clear();
+			flushScheduled = false;
+		}
+
+		for (ElasticSearchIndexEvent event : events) {
+			try {
+				delegate.handle(event);
+			} catch (Throwable t) {
+				Logger.error(ExceptionUtil.getStackTrace(t));
+			}
+		}
+	}
+
+	/**
+	 * Stops the scheduler and passes all pending events on to the delegate. Events handled afterwards are passed on
+	 * without coalescing.
+	 */
+	public void close() {
+		synchronized (this) {
+			scheduler.shutdown();
+		}
+		flush();
+	}
+
+	/**
+	 * Gets the handler which receives the coalesced events
+	 * 
+	 * @return the delegate
+	 */
+	public IndexEventHandler getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Gets the number of events saved by coalescing
+	 * 
+	 * @return the number of coalesced events
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+}
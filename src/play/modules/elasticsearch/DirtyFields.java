@@ -0,0 +1,61 @@
+package play.modules.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.engine.EntityEntry;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import play.db.jpa.JPA;
+
+/**
+ * Finds the fields of an entity which changed since it was loaded, by comparing its current state with the state
+ * Hibernate keeps for dirty checking.
+ */
+abstract class DirtyFields {
+
+	private DirtyFields() {
+		// No public instantiation allowed
+	}
+
+	/**
+	 * Finds the changed fields of an entity
+	 *
+	 * @param entity
+	 *            the entity
+	 * @return the names of the changed fields, empty if nothing changed; null if the entity is not managed by the
+	 *         current session or has not been loaded from the database
+	 */
+	static List<String> find(Object entity) {
+		if (JPA.isInsideTransaction() == false) {
+			return null;
+		}
+		Object delegate = JPA.em().getDelegate();
+		if (delegate instanceof SessionImplementor == false) {
+			return null;
+		}
+
+		SessionImplementor session = (SessionImplementor) delegate;
+		EntityEntry entry = session.getPersistenceContext().getEntry(entity);
+		if (entry == null || entry.isExistsInDatabase() == false || entry.getLoadedState() == null) {
+			return null;
+		}
+
+		EntityPersister persister = entry.getPersister();
+		Object[] currentState = persister.getPropertyValues(entity, session.getEntityMode());
+		int[] dirty = persister.findDirty(currentState, entry.getLoadedState(), entity, session);
+		if (dirty == null) {
+			return Collections.emptyList();
+		}
+
+		String[] propertyNames = persister.getPropertyNames();
+		List<String> fieldNames = new ArrayList<String>(dirty.length);
+		for (int property : dirty) {
+			fieldNames.add(propertyNames[property]);
+		}
+		return fieldNames;
+	}
+
+}
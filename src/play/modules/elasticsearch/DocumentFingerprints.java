@@ -0,0 +1,221 @@
+package play.modules.elasticsearch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.bloom.MurmurHash;
+
+/**
+ * A bounded cache of the last document sent for each document key, kept as a
+ * 64 bit hash of the key and a 64 bit hash of the source, so an index request
+ * whose source did not change can be skipped.
+ *
+ * <p>Entries live in two primitive arrays: a key is looked up in a bucket of
+ * {@link #WAYS} slots and replaces the oldest slot of a full bucket, so the
+ * cache never allocates and never grows beyond its capacity.
+ *
+ * <p>The cache assumes the application is the only writer of its documents. It
+ * starts empty, so a restart resends every document once.
+ */
+public class DocumentFingerprints {
+
+	/** Slots per bucket */
+	static final int WAYS = 4;
+
+	/** Marks a free slot, no key hashes to it */
+	private static final long EMPTY = 0;
+
+	/** Seed for the source hash */
+	private static final long SEED = 0x9747b28cL;
+
+	/** Key hashes, 0 if the slot is free */
+	private final long[] keys;
+
+	/** Source hashes of the keys */
+	private final long[] fingerprints;
+
+	/** Next slot to replace per bucket */
+	private final byte[] victims;
+
+	/** Bucket mask */
+	private final int mask;
+
+	/** Lookups which found the key */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** Lookups which did not find the key */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Lookups which found the same source */
+	private final AtomicLong skips = new AtomicLong();
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param size
+	 *            the minimum number of documents to remember, rounded up to a
+	 *            power of two
+	 */
+	public DocumentFingerprints(int size) {
+		int buckets = 1;
+		while (buckets * WAYS < size) {
+			buckets <<= 1;
+		}
+		keys = new long[buckets * WAYS];
+		fingerprints = new long[buckets * WAYS];
+		victims = new byte[buckets];
+		mask = buckets - 1;
+	}
+
+	/**
+	 * Remembers the source of a document and checks if it is the same as the
+	 * last one remembered
+	 *
+	 * @param index
+	 *            the index name
+	 * @param type
+	 *            the type name
+	 * @param id
+	 *            the document id
+	 * @param source
+	 *            the source buffer
+	 * @param offset
+	 *            the offset of the source
+	 * @param length
+	 *            the length of the source
+	 * @return true if the source is unchanged
+	 */
+	public boolean update(String index, String type, String id, byte[] source, int offset, int length) {
+		long key = hashKey(index, type, id);
+		long fingerprint = MurmurHash.hash64(source, offset, length, SEED);
+		int bucket = (int) (key ^ (key >>> 32)) & mask;
+		int start = bucket * WAYS;
+
+		synchronized (this) {
+			int free = -1;
+			for (int slot = start; slot < start + WAYS; slot++) {
+				if (keys[slot] == key) {
+					hits.incrementAndGet();
+					if (fingerprints[slot] == fingerprint) {
+						skips.incrementAndGet();
+						return true;
+					}
+					fingerprints[slot] = fingerprint;
+					return false;
+				} else if (keys[slot] == EMPTY && free < 0) {
+					free = slot;
+				}
+			}
+
+			misses.incrementAndGet();
+			if (free < 0) {
+				free = start + victims[bucket];
+				victims[bucket] = (byte) ((victims[bucket] + 1) % WAYS);
+			}
+			keys[free] = key;
+			fingerprints[free] = fingerprint;
+			return false;
+		}
+	}
+
+	/**
+	 * Forgets a document, e.g. because it was deleted or changed by other means
+	 * than an index request
+	 *
+	 * @param index
+	 *            the index name
+	 * @param type
+	 *            the type name
+	 * @param id
+	 *            the document id
+	 */
+	public void remove(String index, String type, String id) {
+		long key = hashKey(index, type, id);
+		int start = ((int) (key ^ (key >>> 32)) & mask) * WAYS;
+
+		synchronized (this) {
+			for (int slot = start; slot < start + WAYS; slot++) {
+				if (keys[slot] == key) {
+					keys[slot] = EMPTY;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets all documents
+	 */
+	public synchronized void clear() {
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Gets the number of documents the cache can hold
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Gets the number of lookups which found the document
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups which did not find the document
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of index requests skipped because the source was
+	 * unchanged
+	 *
+	 * @return the skip count
+	 */
+	public long getSkipCount() {
+		return skips.get();
+	}
+
+	/**
+	 * Hashes a document key to 64 bits (FNV-1a over the characters), never
+	 * returning the free slot marker
+	 *
+	 * @param index
+	 *            the index name
+	 * @param type
+	 *            the type name
+	 * @param id
+	 *            the document id
+	 * @return the key hash
+	 */
+	static long hashKey(String index, String type, String id) {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, index);
+		hash = hash(hash, type);
+		hash = hash(hash, id);
+		return hash != EMPTY ? hash : 1;
+	}
+
+	private static long hash(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		// Separate the parts, so a/bc and ab/c differ
+		hash ^= '/';
+		hash *= 0x100000001b3L;
+		return hash;
+	}
+
+}
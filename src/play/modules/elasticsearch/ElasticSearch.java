@@ -79,6 +79,15 @@ public abstract class ElasticSearch {
 		return new Query<T>(clazz, query);
 	}
 
+	/**
+	 * Creates a multi query, to run several queries with a single request
+	 * 
+	 * @return the multi query
+	 */
+	public static MultiQuery multiQuery() {
+		return new MultiQuery();
+	}
+
 	/**
 	 * Search with optional facets.
 	 * 
@@ -115,6 +124,44 @@ public abstract class ElasticSearch {
 		return search(queryBuilder, clazz, true, facets);
 	}
 
+	/**
+	 * Search with optional facets without waiting for the response.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param queryBuilder
+	 *            the query builder
+	 * @param clazz
+	 *            the clazz
+	 * @param facets
+	 *            the facets
+	 * 
+	 * @return the promise of the search results
+	 * @see Query#fetchAsync()
+	 */
+	public static <T extends Model> Promise<SearchResults<T>> searchAsync(final QueryBuilder query, final Class<T> clazz, final AbstractFacetBuilder... facets) {
+		return query(query, clazz, false, facets).fetchAsync();
+	}
+
+	/**
+	 * Search with optional facets without waiting for the response. Hydrates entities
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param queryBuilder
+	 *            the query builder
+	 * @param clazz
+	 *            the clazz
+	 * @param facets
+	 *            the facets
+	 * 
+	 * @return the promise of the search results
+	 * @see Query#fetchAsync()
+	 */
+	public static <T extends Model> Promise<SearchResults<T>> searchAndHydrateAsync(final QueryBuilder queryBuilder, final Class<T> clazz, final AbstractFacetBuilder... facets) {
+		return query(queryBuilder, clazz, true, facets).fetchAsync();
+	}
+
 	/**
 	 * Faceted search, hydrates entities if asked to do so.
 	 * 
@@ -132,6 +179,26 @@ public abstract class ElasticSearch {
 	 * @return the search results
 	 */
 	private static <T extends Model> SearchResults<T> search(final QueryBuilder query, final Class<T> clazz, final boolean hydrate, final AbstractFacetBuilder... facets) {
+		return query(query, clazz, hydrate, facets).fetch();
+	}
+
+	/**
+	 * Builds a faceted query, hydrates entities if asked to do so.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param queryBuilder
+	 *            the query builder
+	 * @param clazz
+	 *            the clazz
+	 * @param hydrate
+	 *            hydrate JPA entities
+	 * @param facets
+	 *            the facets
+	 * 
+	 * @return the query
+	 */
+	private static <T extends Model> Query<T> query(final QueryBuilder query, final Class<T> clazz, final boolean hydrate, final AbstractFacetBuilder... facets) {
 		// Build a query for this search request
 		final Query<T> search = query(query, clazz);
 
@@ -143,7 +210,7 @@ public abstract class ElasticSearch {
 			search.addFacet(facet);
 		}
 
-		return search.fetch();
+		return search;
 	}
 
 	/**
@@ -0,0 +1,189 @@
+/** 
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * @author Felipe Oliveira (http://mashup.fm)
+ * 
+ */
+package play.modules.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+import play.Logger;
+import play.Play;
+import play.db.jpa.NoTransaction;
+import play.modules.elasticsearch.adapter.ElasticSearchAdapter;
+import play.modules.elasticsearch.util.ExceptionUtil;
+
+/**
+ * Bulk indexer job.
+ * 
+ * <p>Drains its queue into bulk requests, which are flushed as soon as one of the
+ * following limits is hit:
+ * <ul>
+ * <li><code>elasticsearch.bulk.actions</code>: maximum number of actions per request (default 1000)</li>
+ * <li><code>elasticsearch.bulk.size</code>: maximum payload size per request (default 5mb)</li>
+ * <li><code>elasticsearch.bulk.linger</code>: maximum time to wait for more events after the first event of a batch (default 200ms)</li>
+ * </ul>
+ * 
+ * <p>The {@link NoTransaction} annotation prevents the JPAPlugin from creating a hibernate session, 
+ * which would remain open for as long as this job is active
+ */
+@NoTransaction
+public class ElasticSearchBulkIndexer extends ElasticSearchIndexer {
+
+	/** Maximum number of actions per bulk request */
+	private final int maxActions = getMaxActions();
+
+	/** Maximum payload size per bulk request */
+	private final long maxBytes = getMaxBytes();
+
+	/** Maximum time to wait for more events */
+	private final long linger = getLinger();
+
+	/**
+	 * Instantiates a new bulk indexer.
+	 * 
+	 * @param queue
+	 *            the queue to consume
+	 */
+	public ElasticSearchBulkIndexer(IndexEventQueue queue) {
+		super(queue);
+	}
+
+	/**
+	 * Drains the queue into a bulk request, starting with the given event
+	 * 
+	 * @see play.modules.elasticsearch.ElasticSearchIndexer#process(play.modules.elasticsearch.ElasticSearchIndexEvent)
+	 */
+	@Override
+	protected void process(ElasticSearchIndexEvent indexEvent) throws InterruptedException {
+		Client client = ElasticSearchPlugin.client();
+		BulkRequestBuilder bulkRequest = client.prepareBulk();
+		long bytes = add(client, bulkRequest, indexEvent);
+
+		// The first event is marked as processed by the caller
+		List<ElasticSearchIndexEvent> drained = new ArrayList<ElasticSearchIndexEvent>();
+		try {
+			// Keep draining until one of the limits is hit
+			long deadline = System.currentTimeMillis() + linger;
+			while (bulkRequest.numberOfActions() < maxActions && bytes < maxBytes) {
+				long wait = deadline - System.currentTimeMillis();
+				indexEvent = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+				if (indexEvent == null) {
+					break;
+				}
+				drained.add(indexEvent);
+				bytes += add(client, bulkRequest, indexEvent);
+			}
+
+			if (bulkRequest.numberOfActions() > 0) {
+				ElasticSearchAdapter.executeBulk(bulkRequest);
+			}
+		} finally {
+			for (ElasticSearchIndexEvent event : drained) {
+				event.processed();
+			}
+		}
+	}
+
+	/**
+	 * Bulk requests are always executed synchronously, they already keep many
+	 * documents on the wire at once.
+	 * 
+	 * @see play.modules.elasticsearch.ElasticSearchIndexer#isAsync()
+	 */
+	@Override
+	protected boolean isAsync() {
+		return false;
+	}
+
+	/**
+	 * Adds an event to the bulk request
+	 * 
+	 * @param client
+	 *            the client
+	 * @param bulkRequest
+	 *            the bulk request
+	 * @param message
+	 *            the index event
+	 * @return the number of payload bytes added
+	 */
+	private static long add(Client client, BulkRequestBuilder bulkRequest, ElasticSearchIndexEvent message) {
+		// A document which cannot be serialized should not sink the whole batch
+		try {
+			switch (message.getType()) {
+			case INDEX:
+			case UPDATE:
+				// Bulk requests cannot hold updates, index the whole document
+				IndexRequestBuilder indexRequest = ElasticSearchIndexAction.prepareIndex(client, message.asIndex());
+				if (indexRequest == null) {
+					Logger.warn("Elastic Search - %s no longer exists, skipping", message);
+					return 0;
+				}
+				if (ElasticSearchAdapter.isUnchanged(indexRequest)) {
+					Logger.debug("Elastic Search - %s unchanged, skipping", message);
+					return 0;
+				}
+				bulkRequest.add(indexRequest);
+				return indexRequest.request().underlyingSourceLength();
+			case DELETE:
+				DeleteRequestBuilder deleteRequest = ElasticSearchAdapter.prepareDeleteDocument(client, message.getMapper(), message.getDocumentId());
+				bulkRequest.add(deleteRequest);
+				return 0;
+			}
+		} catch (Throwable t) {
+			ElasticSearchPlugin.getMetrics().failure();
+			Logger.error("Elastic Search - skipping %s: %s", message, ExceptionUtil.getStackTrace(t));
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the maximum number of actions per bulk request.
+	 * 
+	 * @return the maximum number of actions
+	 */
+	private static int getMaxActions() {
+		return Integer.parseInt(Play.configuration.getProperty("elasticsearch.bulk.actions", "1000"));
+	}
+
+	/**
+	 * Gets the maximum payload size per bulk request.
+	 * 
+	 * @return the maximum size in bytes
+	 */
+	private static long getMaxBytes() {
+		return ByteSizeValue.parseBytesSizeValue(Play.configuration.getProperty("elasticsearch.bulk.size", "5mb")).bytes();
+	}
+
+	/**
+	 * Gets the maximum time to wait for more events before flushing.
+	 * 
+	 * @return the linger time in milliseconds
+	 */
+	private static long getLinger() {
+		return TimeValue.parseTimeValue(Play.configuration.getProperty("elasticsearch.bulk.linger"), TimeValue.timeValueMillis(200)).millis();
+	}
+
+}
@@ -30,9 +30,15 @@ public class ElasticSearchDeliveryMode {
 	/** The LOCAL. */
 	public final static ElasticSearchDeliveryMode LOCAL = new ElasticSearchDeliveryMode(new LocalIndexEventHandler());
 
+	/** The JOURNAL. */
+	public final static ElasticSearchDeliveryMode JOURNAL = new ElasticSearchDeliveryMode(new JournalIndexEventHandler());
+
 	/** The RABBITMQ. */
 	public final static ElasticSearchDeliveryMode RABBITMQ = new ElasticSearchDeliveryMode(new RabbitMQIndexEventHandler());
 
+	/** The BULK. */
+	public final static ElasticSearchDeliveryMode BULK = new ElasticSearchDeliveryMode(new BulkIndexEventHandler());
+
 	/** The Synchronous. */
 	public final static ElasticSearchDeliveryMode SYNCHRONOUS = new ElasticSearchDeliveryMode(new SynchronousIndexEventHandler());
 
@@ -68,11 +74,28 @@ public class ElasticSearchDeliveryMode {
 		}
 	}
 
+	/**
+	 * Creates a delivery mode which coalesces events for the same document before passing them on to another mode.
+	 * 
+	 * @param deliveryMode
+	 *            the delivery mode which receives the coalesced events
+	 * @param window
+	 *            the coalescing window in milliseconds
+	 * @return the coalescing delivery mode
+	 */
+	public static ElasticSearchDeliveryMode createCoalescing(final ElasticSearchDeliveryMode deliveryMode, final long window) {
+		return new ElasticSearchDeliveryMode(new CoalescingIndexEventHandler(deliveryMode.getHandler(), window));
+	}
+
 	public static ElasticSearchDeliveryMode valueOf(final String s) {
 		if ("LOCAL".equals(s))
 			return LOCAL;
+		if ("JOURNAL".equals(s))
+			return JOURNAL;
 		if ("RABBITMQ".equals(s))
 			return RABBITMQ;
+		if ("BULK".equals(s))
+			return BULK;
 		if ("SYNCHRONOUS".equals(s))
 			return SYNCHRONOUS;
 		if ("DISCARD".equals(s))
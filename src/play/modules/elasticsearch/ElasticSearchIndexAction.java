@@ -18,10 +18,23 @@
  */
 package play.modules.elasticsearch;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.index.engine.DocumentMissingException;
 
 import play.Logger;
+import play.Play;
 import play.db.Model;
+import play.db.jpa.JPAPlugin;
+import play.db.jpa.NoTransaction;
+import play.jobs.Job;
+import play.libs.F;
 import play.modules.elasticsearch.adapter.ElasticSearchAdapter;
 import play.modules.elasticsearch.mapping.ModelMapper;
 import play.modules.elasticsearch.util.ExceptionUtil;
@@ -42,23 +55,247 @@ public class ElasticSearchIndexAction implements play.libs.F.Action<ElasticSearc
 		Logger.info("Elastic Search - %s Event", message);
 
 		Client client = ElasticSearchPlugin.client();
-		Model object = message.getObject();
-		@SuppressWarnings("unchecked")
-		ModelMapper<Model> mapper = (ModelMapper<Model>) ElasticSearchPlugin.getMapper(object.getClass());
+		ModelMapper<Model> mapper = message.getMapper();
 
 		// Index Event
 		try {
 			switch (message.getType()) {
 			case INDEX:
-				ElasticSearchAdapter.indexModel(client, mapper, object);
+				IndexRequestBuilder request = prepareIndex(client, message);
+				if (request == null) {
+					Logger.warn("Elastic Search - %s no longer exists, skipping", message);
+					break;
+				}
+				if (ElasticSearchAdapter.isUnchanged(request)) {
+					Logger.debug("Elastic Search - %s unchanged, skipping", message);
+					break;
+				}
+				IndexResponse response = ElasticSearchAdapter.execute(request);
+				Logger.debug("Index Response: %s", response);
+				break;
+			case UPDATE:
+				try {
+					ElasticSearchAdapter.execute(ElasticSearchAdapter.prepareUpdateDocument(client, mapper,
+							message.getDocumentId(), message.getChanges()));
+				} catch (Throwable t) {
+					if (isDocumentMissing(t) == false) {
+						throw t;
+					}
+					Logger.debug("Elastic Search - %s not indexed yet, indexing the whole document", message);
+					invoke(message.asIndex());
+				}
 				break;
 			case DELETE:
-				ElasticSearchAdapter.deleteModel(client, mapper, object);
+				ElasticSearchAdapter.deleteDocument(client, mapper, message.getDocumentId());
 				break;
 			}
 		} catch (Throwable t) {
+			ElasticSearchPlugin.getMetrics().failure();
 			Logger.error(ExceptionUtil.getStackTrace(t));
 		}
 	}
 
+	/**
+	 * Sends the event to Elastic Search without waiting for the response. The
+	 * model is serialized by the calling thread.
+	 * 
+	 * @param message
+	 *            the index event
+	 * @return the promise of the response, which is redeemed with null if the
+	 *         event was skipped or could not be sent
+	 * @see ElasticSearchAdapter#executeAsync(org.elasticsearch.action.ActionRequestBuilder)
+	 */
+	public F.Promise<?> invokeAsync(ElasticSearchIndexEvent message) {
+		// Log Debug
+		Logger.info("Elastic Search - %s Event (async)", message);
+
+		Client client = ElasticSearchPlugin.client();
+		ModelMapper<Model> mapper = message.getMapper();
+
+		// Index Event
+		try {
+			switch (message.getType()) {
+			case INDEX:
+				IndexRequestBuilder request = prepareIndex(client, message);
+				if (request == null) {
+					Logger.warn("Elastic Search - %s no longer exists, skipping", message);
+					break;
+				}
+				if (ElasticSearchAdapter.isUnchanged(request)) {
+					Logger.debug("Elastic Search - %s unchanged, skipping", message);
+					break;
+				}
+				return logFailure(message, ElasticSearchAdapter.executeAsync(request));
+			case UPDATE:
+				return logFailure(message, updateAsync(client, message));
+			case DELETE:
+				return logFailure(message, ElasticSearchAdapter.deleteDocumentAsync(client, mapper, message.getDocumentId()));
+			}
+		} catch (Throwable t) {
+			ElasticSearchPlugin.getMetrics().failure();
+			Logger.error(ExceptionUtil.getStackTrace(t));
+		}
+
+		F.Promise<Object> skipped = new F.Promise<Object>();
+		skipped.invoke(null);
+		return skipped;
+	}
+
+	/**
+	 * Sends an UPDATE event without waiting for the response. If the document
+	 * does not exist yet, the whole document is loaded and indexed by a job
+	 * instead, as the response arrives on a transport thread; the returned
+	 * promise is only redeemed once it has been indexed, so later requests for
+	 * the same document still wait for it.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param message
+	 *            the update event
+	 * @return the promise of the update response, redeemed with null once the
+	 *         document has been indexed as a whole instead
+	 */
+	private F.Promise<Object> updateAsync(Client client, final ElasticSearchIndexEvent message) {
+		final F.Promise<Object> result = new F.Promise<Object>();
+		ElasticSearchAdapter.executeAsync(
+				ElasticSearchAdapter.prepareUpdateDocument(client, message.getMapper(), message.getDocumentId(),
+						message.getChanges())).onRedeem(new F.Action<F.Promise<UpdateResponse>>() {
+			@Override
+			public void invoke(F.Promise<UpdateResponse> update) {
+				try {
+					result.invoke(update.get());
+				} catch (ExecutionException e) {
+					if (isDocumentMissing(e.getCause())) {
+						Logger.debug("Elastic Search - %s not indexed yet, indexing the whole document", message);
+						redeemWithNull(new IndexJob(message).now(), result);
+					} else {
+						result.invokeWithException(e.getCause());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					result.invokeWithException(e);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Redeems a promise with null once another promise is redeemed
+	 * 
+	 * @param promise
+	 *            the promise to wait for, whose failure has been logged
+	 * @param result
+	 *            the promise to redeem
+	 */
+	private static <R> void redeemWithNull(F.Promise<R> promise, final F.Promise<Object> result) {
+		promise.onRedeem(new F.Action<F.Promise<R>>() {
+			@Override
+			public void invoke(F.Promise<R> index) {
+				result.invoke(null);
+			}
+		});
+	}
+
+	/**
+	 * Indexes the whole document of an event, loading the model again in a
+	 * transaction of its own
+	 */
+	@NoTransaction
+	private static class IndexJob extends Job<Void> {
+
+		/** The event, only referencing its object */
+		private final ElasticSearchIndexEvent message;
+
+		IndexJob(ElasticSearchIndexEvent message) {
+			this.message = new ElasticSearchIndexEvent(message.getModelClass(), message.getDocumentId(),
+					ElasticSearchIndexEvent.Type.INDEX);
+		}
+
+		@Override
+		public void doJob() {
+			new ElasticSearchIndexAction().invoke(message);
+		}
+
+	}
+
+	/**
+	 * Checks if a request failed because the document does not exist
+	 * 
+	 * @param t
+	 *            the failure
+	 * @return true if the document is missing
+	 */
+	private static boolean isDocumentMissing(Throwable t) {
+		return ExceptionsHelper.unwrapCause(t) instanceof DocumentMissingException;
+	}
+
+	/**
+	 * Logs the failure of an asynchronous request
+	 * 
+	 * @param message
+	 *            the index event
+	 * @param promise
+	 *            the promise of the response
+	 * @return the promise
+	 */
+	private static <R> F.Promise<R> logFailure(final ElasticSearchIndexEvent message, F.Promise<R> promise) {
+		promise.onRedeem(new F.Action<F.Promise<R>>() {
+			@Override
+			public void invoke(F.Promise<R> result) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					ElasticSearchPlugin.getMetrics().failure();
+					Logger.error("Elastic Search - %s failed: %s", message, ExceptionUtil.getStackTrace(e.getCause()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		return promise;
+	}
+
+	/**
+	 * Checks if requests should be sent without waiting for the response, as
+	 * configured by <code>elasticsearch.async</code> (default false)
+	 * 
+	 * @return true to send requests asynchronously
+	 */
+	public static boolean isAsync() {
+		return Boolean.parseBoolean(Play.configuration.getProperty("elasticsearch.async", "false"));
+	}
+
+	/**
+	 * Prepares the index request of an INDEX event. Snapshots are sent as they
+	 * are, referenced models are loaded in a transaction of their own.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param message
+	 *            the index event
+	 * @return the index request, null if the model no longer exists
+	 * @throws IOException
+	 *             if the model could not be serialized
+	 */
+	static IndexRequestBuilder prepareIndex(Client client, ElasticSearchIndexEvent message) throws IOException {
+		ModelMapper<Model> mapper = message.getMapper();
+		if (message.getSource() != null) {
+			return ElasticSearchAdapter.prepareIndexDocument(client, mapper, message.getDocumentId(), message.getSource());
+		}
+
+		boolean transaction = message.getObject() == null;
+		try {
+			if (transaction) {
+				JPAPlugin.startTx(true);
+			}
+			Model object = message.findObject();
+			return object != null ? ElasticSearchAdapter.prepareIndexModel(client, mapper, object) : null;
+		} finally {
+			if (transaction) {
+				JPAPlugin.closeTx(false);
+			}
+		}
+	}
+
 }
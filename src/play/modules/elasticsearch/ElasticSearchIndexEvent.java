@@ -18,16 +18,44 @@
  */
 package play.modules.elasticsearch;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+import play.Play;
+import play.data.binding.Binder;
 import play.db.Model;
+import play.modules.elasticsearch.adapter.ElasticSearchAdapter;
+import play.modules.elasticsearch.mapping.ModelMapper;
 
 /**
  * The Class ElasticSearchIndexEvent.
+ * 
+ * <p>An event either holds the model itself, or only references it by model class and document id. Referencing events
+ * can be written to and read from disk; their model is loaded again when it is needed.
+ * <p>A {@link #snapshot() snapshot} references the model and carries the serialized document, so the model does not
+ * have to be loaded or walked again by the indexer.
+ * <p>An {@link #update(Model, Map) UPDATE} event carries the new values of the changed fields only. Wherever a partial
+ * update is not possible it is handled {@link #asIndex() as an INDEX event} instead.
  */
 public class ElasticSearchIndexEvent {
 
-	/** The object. */
+	/** The object, null if the event only references it. */
 	private Model object;
 
+	/** The model class of a referenced object. */
+	private Class<? extends Model> modelClass;
+
+	/** The document id of a referenced object. */
+	private String documentId;
+
+	/** The serialized document of a snapshot, null otherwise. */
+	private byte[] source;
+
+	/** The changed document fields of an UPDATE event, null otherwise. */
+	private Map<String, Object> changes;
+
 	/** The type. */
 	private Type type;
 
@@ -45,6 +73,85 @@ public class ElasticSearchIndexEvent {
 		this.type = type;
 	}
 
+	/**
+	 * Instantiates a new elastic search index event which only references its object.
+	 * 
+	 * @param modelClass
+	 *            the model class
+	 * @param documentId
+	 *            the document id
+	 * @param type
+	 *            the type
+	 */
+	public ElasticSearchIndexEvent(Class<? extends Model> modelClass, String documentId, Type type) {
+		super();
+		this.modelClass = modelClass;
+		this.documentId = documentId;
+		this.type = type;
+	}
+
+	/**
+	 * Instantiates a new elastic search index event as a copy of another one.
+	 * 
+	 * @param event
+	 *            the event to copy
+	 */
+	protected ElasticSearchIndexEvent(ElasticSearchIndexEvent event) {
+		super();
+		this.object = event.object;
+		this.modelClass = event.modelClass;
+		this.documentId = event.documentId;
+		this.source = event.source;
+		this.changes = event.changes;
+		this.type = event.type;
+	}
+
+	/**
+	 * Creates an UPDATE event, which only changes some fields of the document of a model.
+	 * 
+	 * @param object
+	 *            the object
+	 * @param changes
+	 *            the new values by document field, null to remove a field
+	 * @return the event
+	 */
+	public static ElasticSearchIndexEvent update(Model object, Map<String, Object> changes) {
+		ElasticSearchIndexEvent event = new ElasticSearchIndexEvent(object, Type.UPDATE);
+		event.changes = changes;
+		return event;
+	}
+
+	/**
+	 * Gets an INDEX event for the same model, e.g. to send an UPDATE event through a bulk request.
+	 * 
+	 * @return this event if it is not an UPDATE event, an INDEX event otherwise
+	 */
+	public ElasticSearchIndexEvent asIndex() {
+		if (this.type != Type.UPDATE) {
+			return this;
+		}
+		if (this.object != null) {
+			return new ElasticSearchIndexEvent(this.object, Type.INDEX);
+		}
+		return new ElasticSearchIndexEvent(this.modelClass, this.documentId, Type.INDEX);
+	}
+
+	/**
+	 * Creates a snapshot of this event, which holds the serialized document of an INDEX event instead of the model.
+	 * 
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the model could not be serialized
+	 */
+	public ElasticSearchIndexEvent snapshot() throws IOException {
+		ElasticSearchIndexEvent snapshot = new ElasticSearchIndexEvent(getModelClass(), getDocumentId(), this.type);
+		if (this.type == Type.INDEX) {
+			snapshot.source = this.source != null ? this.source : ElasticSearchAdapter.serialize(getMapper(), findObject());
+		}
+		snapshot.changes = this.changes;
+		return snapshot;
+	}
+
 	/**
 	 * The Enum Type.
 	 */
@@ -54,19 +161,84 @@ public class ElasticSearchIndexEvent {
 		DELETE,
 
 		/** The INDEX. */
-		INDEX;
+		INDEX,
+
+		/** The UPDATE of some fields. */
+		UPDATE;
 
 	}
 
 	/**
 	 * Gets the object.
 	 * 
-	 * @return the object
+	 * @return the object, null if the event only references it
 	 */
 	public Model getObject() {
 		return this.object;
 	}
 
+	/**
+	 * Gets the object, loading it from the database if the event only references it. Loading requires an active JPA
+	 * transaction.
+	 * 
+	 * @return the object, null if it no longer exists
+	 */
+	public Model findObject() {
+		if (this.object != null) {
+			return this.object;
+		}
+
+		Model.Factory factory = Model.Manager.factoryFor(this.modelClass);
+		try {
+			return factory.findById(Binder.directBind(this.documentId, factory.keyType()));
+		} catch (Exception e) {
+			throw new IllegalStateException("Could not convert the document id " + this.documentId + " of " + this.modelClass, e);
+		}
+	}
+
+	/**
+	 * Gets the model class.
+	 * 
+	 * @return the model class
+	 */
+	@SuppressWarnings("unchecked")
+	public Class<Model> getModelClass() {
+		if (this.object != null) {
+			return (Class<Model>) this.object.getClass();
+		}
+		return (Class<Model>) this.modelClass;
+	}
+
+	/**
+	 * Gets the serialized document.
+	 * 
+	 * @return the document source, null if the event is not a snapshot
+	 */
+	public byte[] getSource() {
+		return this.source;
+	}
+
+	/**
+	 * Gets the changed fields of an UPDATE event.
+	 * 
+	 * @return the new values by document field, null if this is not an UPDATE event
+	 */
+	public Map<String, Object> getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * Gets the document id.
+	 * 
+	 * @return the document id
+	 */
+	public String getDocumentId() {
+		if (this.object != null) {
+			return getMapper().getDocumentId(this.object);
+		}
+		return this.documentId;
+	}
+
 	/**
 	 * Gets the type.
 	 * 
@@ -76,6 +248,77 @@ public class ElasticSearchIndexEvent {
 		return this.type;
 	}
 
+	/**
+	 * Gets the mapper of the model.
+	 * 
+	 * @return the model mapper
+	 */
+	public ModelMapper<Model> getMapper() {
+		return ElasticSearchPlugin.getMapper(getModelClass());
+	}
+
+	/**
+	 * Gets the key which identifies the document in Elastic Search (index/type/id).
+	 * 
+	 * @return the document key
+	 */
+	public String getDocumentKey() {
+		ModelMapper<Model> mapper = getMapper();
+		return mapper.getIndexName() + "/" + mapper.getTypeName() + "/" + getDocumentId();
+	}
+
+	/**
+	 * Called by the indexer once the event has been processed, successfully or not. Does nothing by default.
+	 */
+	public void processed() {
+		// Nothing to do
+	}
+
+	/**
+	 * Gets a callback which marks this event as processed without holding on to its object, for a copy of the event
+	 * which is processed instead, e.g. after it was spilled to disk.
+	 * 
+	 * @return the callback, null if {@link #processed()} does nothing
+	 */
+	public Runnable getProcessedCallback() {
+		return null;
+	}
+
+	/**
+	 * Writes a reference to the object of this event
+	 * 
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 */
+	public void writeReference(DataOutput out) throws IOException {
+		// A reference cannot carry the changes, the model is indexed again instead
+		out.writeByte(asIndex().type.ordinal());
+		out.writeUTF(getModelClass().getName());
+		out.writeUTF(getDocumentId());
+	}
+
+	/**
+	 * Reads an event written by {@link #writeReference(DataOutput)}
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the event, which only references its object
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static ElasticSearchIndexEvent readReference(DataInput in) throws IOException {
+		Type type = Type.values()[in.readByte()];
+		String className = in.readUTF();
+		String documentId = in.readUTF();
+		try {
+			Class<? extends Model> modelClass = (Class<? extends Model>) Play.classloader.loadClass(className);
+			return new ElasticSearchIndexEvent(modelClass, documentId, type);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown model class " + className);
+		}
+	}
+
 	/**
 	 * To String
 	 * 
@@ -83,6 +326,15 @@ public class ElasticSearchIndexEvent {
 	 */
 	@Override
 	public String toString() {
+		if (this.changes != null) {
+			return "ElasticSearchIndexEvent [modelClass=" + getModelClass() + ", documentId=" + getDocumentId() + ", changes=" + this.changes.keySet() + ", type=" + this.type + "]";
+		}
+		if (this.source != null) {
+			return "ElasticSearchIndexEvent [modelClass=" + this.modelClass + ", documentId=" + this.documentId + ", source=" + this.source.length + " bytes, type=" + this.type + "]";
+		}
+		if (this.object == null) {
+			return "ElasticSearchIndexEvent [modelClass=" + this.modelClass + ", documentId=" + this.documentId + ", type=" + this.type + "]";
+		}
 		return "ElasticSearchIndexEvent [object=" + this.object + ", type=" + this.type + "]";
 	}
 
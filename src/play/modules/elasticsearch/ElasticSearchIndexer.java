@@ -21,21 +21,38 @@ package play.modules.elasticsearch;
 import play.Logger;
 import play.db.jpa.NoTransaction;
 import play.jobs.Job;
-import play.libs.F.Promise;
 import play.modules.elasticsearch.util.ExceptionUtil;
 
 /**
  * Indexer job.
  * 
- * <p>The indexing process runs in a separate thread
+ * <p>The indexing process runs in a separate thread, consuming the events of its own queue in order
+ * <p>With <code>elasticsearch.async</code> enabled, the indexer does not wait for responses, but still 
+ * waits for the previous request for the same document before sending the next one
  * <p>The {@link NoTransaction} annotation prevents the JPAPlugin from creating a hibernate session, 
  * which would remain open for as long as this job is active
  */
 @NoTransaction
 public class ElasticSearchIndexer extends Job<Void> {
 
-	/** Index Stream */
-	public static play.libs.F.EventStream<ElasticSearchIndexEvent> stream = new play.libs.F.EventStream<ElasticSearchIndexEvent>();
+	/** Index Queue */
+	protected final IndexEventQueue queue;
+
+	/** Send events without waiting for the response */
+	private final boolean async = ElasticSearchIndexAction.isAsync();
+
+	/** Pending asynchronous requests */
+	private final InFlightIndexRequests inFlight = new InFlightIndexRequests();
+
+	/**
+	 * Instantiates a new indexer.
+	 * 
+	 * @param queue
+	 *            the queue to consume
+	 */
+	public ElasticSearchIndexer(IndexEventQueue queue) {
+		this.queue = queue;
+	}
 
 	/**
 	 * 
@@ -43,15 +60,18 @@ public class ElasticSearchIndexer extends Job<Void> {
 	 */
 	@Override
 	public void doJob() {
-		// In case Play starts this job, we don't need to start it again
-		LocalIndexEventHandler.markIndexerStarted();
-
 		while (true) {
 			try {
-				Promise<ElasticSearchIndexEvent> promise = ElasticSearchIndexer.stream.nextEvent();
-				ElasticSearchIndexEvent indexEvent = promise.get();
-				ElasticSearchIndexAction indexAction = new ElasticSearchIndexAction();
-				indexAction.invoke(indexEvent);
+				ElasticSearchIndexEvent indexEvent = queue.take();
+				if (isAsync()) {
+					inFlight.send(indexEvent);
+				} else {
+					try {
+						process(indexEvent);
+					} finally {
+						indexEvent.processed();
+					}
+				}
 
 			} catch (Throwable t) {
 				Logger.error(ExceptionUtil.getStackTrace(t));
@@ -59,4 +79,26 @@ public class ElasticSearchIndexer extends Job<Void> {
 		}
 	}
 
+	/**
+	 * Processes an event taken from the queue
+	 * 
+	 * @param indexEvent
+	 *            the index event
+	 * @throws InterruptedException
+	 */
+	protected void process(ElasticSearchIndexEvent indexEvent) throws InterruptedException {
+		ElasticSearchIndexAction indexAction = new ElasticSearchIndexAction();
+		indexAction.invoke(indexEvent);
+	}
+
+	/**
+	 * Checks if events should be sent without waiting for the response
+	 * 
+	 * @return true to send events asynchronously
+	 * @see ElasticSearchIndexAction#isAsync()
+	 */
+	protected boolean isAsync() {
+		return async;
+	}
+
 }
@@ -20,6 +20,7 @@ package play.modules.elasticsearch;
 
 import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
@@ -33,19 +34,19 @@ import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.ImmutableSettings.Builder;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
 
+import com.google.gson.JsonObject;
+
 import play.Logger;
 import play.Play;
 import play.PlayPlugin;
 import play.db.Model;
 import play.modules.elasticsearch.ElasticSearchIndexEvent.Type;
 import play.modules.elasticsearch.adapter.ElasticSearchAdapter;
-import play.modules.elasticsearch.annotations.ElasticSearchable;
 import play.modules.elasticsearch.mapping.MapperFactory;
-import play.modules.elasticsearch.mapping.MappingException;
-import play.modules.elasticsearch.mapping.MappingUtil;
 import play.modules.elasticsearch.mapping.ModelMapper;
 import play.modules.elasticsearch.mapping.impl.DefaultMapperFactory;
 import play.modules.elasticsearch.util.ExceptionUtil;
@@ -66,14 +67,20 @@ public class ElasticSearchPlugin extends PlayPlugin {
 
 	private static volatile ElasticSearchDeliveryMode currentDeliveryMode;
 
-	/** The mappers index. */
-	private static Map<Class<?>, ModelMapper<?>> mappers = null;
+	/** The searchable models and their mappers. */
+	private static volatile ModelRegistry registry = null;
 
 	/** The started indices. */
 	private static Set<Class<?>> indicesStarted = null;
 
-	/** Index type -> Class lookup */
-	private static Map<String, Class<?>> modelLookup = null;
+	/** The indexing metrics. */
+	private static final IndexMetrics metrics = new IndexMetrics();
+
+	/** The fingerprints of indexed documents, null if disabled. */
+	private static volatile DocumentFingerprints fingerprints = null;
+
+	/** The cache of query responses, null if disabled. */
+	private static volatile QueryCache queryCache = null;
 
 	/** The client. */
 	private static Client client = null;
@@ -89,7 +96,9 @@ public class ElasticSearchPlugin extends PlayPlugin {
 
 	public static void setMapperFactory(final MapperFactory factory) {
 		mapperFactory = factory;
-		mappers.clear();
+		if (registry != null) {
+			registry = buildRegistry();
+		}
 	}
 
 	/**
@@ -152,6 +161,120 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		return ElasticSearchDeliveryMode.valueOf(s.toUpperCase());
 	}
 
+	/**
+	 * Gets the coalescing window from the configuration.
+	 * 
+	 * @return the coalescing window in milliseconds, 0 if disabled
+	 */
+	private static long getCoalesceWindowFromConfiguration() {
+		return TimeValue.parseTimeValue(Play.configuration.getProperty("elasticsearch.coalesce.window"), TimeValue.timeValueMillis(0)).millis();
+	}
+
+	/**
+	 * Gets the indexing metrics
+	 * 
+	 * @return the metrics
+	 */
+	public static IndexMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Gets the fingerprints of the documents sent to Elastic Search
+	 * 
+	 * @return the fingerprints, null if unchanged documents are not skipped
+	 */
+	public static DocumentFingerprints getFingerprints() {
+		return fingerprints;
+	}
+
+	/**
+	 * Gets the number of documents whose fingerprint is kept to skip unchanged documents, as configured by
+	 * <code>elasticsearch.fingerprints</code> (default 0, disabled)
+	 * 
+	 * @return the number of documents
+	 */
+	private static int getFingerprintsFromConfiguration() {
+		return Integer.parseInt(Play.configuration.getProperty("elasticsearch.fingerprints", "0"));
+	}
+
+	/**
+	 * Gets the cache of query responses
+	 * 
+	 * @return the cache, null if queries are never cached
+	 */
+	public static QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Gets the number of responses kept by the query cache, as configured by <code>elasticsearch.queryCache.size</code>
+	 * (default 0, disabled)
+	 * 
+	 * @return the number of responses
+	 */
+	private static int getQueryCacheSizeFromConfiguration() {
+		return Integer.parseInt(Play.configuration.getProperty("elasticsearch.queryCache.size", "0"));
+	}
+
+	/**
+	 * Gets the time to live of cached query responses, as configured by <code>elasticsearch.queryCache.ttl</code>
+	 * (default 60s)
+	 * 
+	 * @return the time to live in milliseconds
+	 */
+	private static long getQueryCacheTtlFromConfiguration() {
+		return TimeValue.parseTimeValue(Play.configuration.getProperty("elasticsearch.queryCache.ttl"), TimeValue.timeValueSeconds(60)).millis();
+	}
+
+	/**
+	 * Gets the number of events saved by coalescing
+	 * 
+	 * @return the number of coalesced events, 0 if coalescing is disabled
+	 */
+	public static long getCoalescedEventCount() {
+		final CoalescingIndexEventHandler handler = findHandler(CoalescingIndexEventHandler.class);
+		return handler != null ? handler.getCoalescedCount() : 0;
+	}
+
+	/**
+	 * Gets the number of events waiting in the local index queues
+	 * 
+	 * @return the queue depth, 0 if events are not processed locally
+	 */
+	public static int getQueueDepth() {
+		final LocalIndexEventHandler handler = findHandler(LocalIndexEventHandler.class);
+		return handler != null ? handler.getQueueDepth() : 0;
+	}
+
+	/**
+	 * Gets the number of events which were added to a full local index queue
+	 * 
+	 * @return the overflow count, 0 if events are not processed locally
+	 */
+	public static long getQueueOverflowCount() {
+		final LocalIndexEventHandler handler = findHandler(LocalIndexEventHandler.class);
+		return handler != null ? handler.getOverflowCount() : 0;
+	}
+
+	/**
+	 * Finds a handler of the current delivery mode, looking through coalescing handlers
+	 * 
+	 * @param handlerClass
+	 *            the handler class
+	 * @return the handler, null if not used
+	 */
+	private static <H extends IndexEventHandler> H findHandler(final Class<H> handlerClass) {
+		IndexEventHandler handler = currentDeliveryMode != null ? currentDeliveryMode.getHandler() : null;
+		while (handler != null) {
+			if (handlerClass.isInstance(handler)) {
+				return handlerClass.cast(handler);
+			}
+			handler = handler instanceof CoalescingIndexEventHandler ? ((CoalescingIndexEventHandler) handler).getDelegate() : null;
+		}
+		return null;
+	}
+
 	/**
 	 * This method is called when the application starts - It will start ES instance
 	 * 
@@ -160,10 +283,14 @@ public class ElasticSearchPlugin extends PlayPlugin {
 	@Override
 	public void onApplicationStart() {
 		// (re-)set caches
-		mappers = new ConcurrentHashMap<Class<?>, ModelMapper<?>>();
-		modelLookup = new ConcurrentHashMap<String, Class<?>>();
 		indicesStarted = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 		ReflectionUtil.clearCache();
+		BatchFetcher.clearCache();
+		registry = buildRegistry();
+		final int fingerprintCount = getFingerprintsFromConfiguration();
+		fingerprints = fingerprintCount > 0 ? new DocumentFingerprints(fingerprintCount) : null;
+		final int queryCacheSize = getQueryCacheSizeFromConfiguration();
+		queryCache = queryCacheSize > 0 ? new QueryCache(queryCacheSize, getQueryCacheTtlFromConfiguration()) : null;
 
 		// Make sure it doesn't get started more than once
 		if ((client != null) || started) {
@@ -221,10 +348,17 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		}
 
 		// Configure current delivery mode
-		setDeliveryMode(getDeliveryModeFromConfiguration());
+		ElasticSearchDeliveryMode deliveryMode = getDeliveryModeFromConfiguration();
+		final long coalesceWindow = getCoalesceWindowFromConfiguration();
+		if (coalesceWindow > 0) {
+			Logger.info("Coalescing Elastic Search index events within %sms", coalesceWindow);
+			deliveryMode = ElasticSearchDeliveryMode.createCoalescing(deliveryMode, coalesceWindow);
+		}
+		setDeliveryMode(deliveryMode);
 
 		// Bind Admin
 		Router.addRoute("GET", "/es-admin", "elasticsearch.ElasticSearchAdmin.index");
+		Router.addRoute("GET", "/es-admin/metrics", "elasticsearch.ElasticSearchAdmin.metrics");
 
 		// Check Client
 		if (client == null) {
@@ -232,17 +366,146 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	public static <M> ModelMapper<M> getMapper(final Class<M> clazz) {
-		if (mappers.containsKey(clazz)) {
-			return (ModelMapper<M>) mappers.get(clazz);
+	/**
+	 * Gets the status of the indexing pipeline for the Play status page
+	 * 
+	 * @see play.PlayPlugin#getStatus()
+	 */
+	@Override
+	public String getStatus() {
+		return "Elastic Search:\n~~~~~~~~~~~~~~~\n" + metrics;
+	}
+
+	/**
+	 * Gets the status of the indexing pipeline as JSON
+	 * 
+	 * @see play.PlayPlugin#getJsonStatus()
+	 */
+	@Override
+	public JsonObject getJsonStatus() {
+		JsonObject status = new JsonObject();
+		status.add("elasticsearch", metrics.toJson());
+		return status;
+	}
+
+	/**
+	 * Checks if documents should be serialized when the model is saved, as configured by
+	 * <code>elasticsearch.snapshot</code> (default false)
+	 * 
+	 * @return true to queue serialized documents instead of models
+	 */
+	private static boolean isSnapshotFromConfiguration() {
+		return Boolean.parseBoolean(Play.configuration.getProperty("elasticsearch.snapshot", "false"));
+	}
+
+	/**
+	 * Checks if updated models whose changes are limited to simple fields should only send those fields, as
+	 * configured by <code>elasticsearch.partialUpdates</code> (default false)
+	 * 
+	 * @return true to send partial updates
+	 */
+	private static boolean isPartialUpdatesFromConfiguration() {
+		return Boolean.parseBoolean(Play.configuration.getProperty("elasticsearch.partialUpdates", "false"));
+	}
+
+	/**
+	 * Creates an UPDATE event for the changed fields of a model
+	 * 
+	 * @param clazz
+	 *            the model class
+	 * @param model
+	 *            the model
+	 * @return the event, null if the whole document should be indexed instead
+	 */
+	private static ElasticSearchIndexEvent createUpdateEvent(final Class<Model> clazz, final Model model) {
+		try {
+			final List<String> dirtyFields = DirtyFields.find(model);
+			if (dirtyFields == null || dirtyFields.isEmpty()) {
+				return null;
+			}
+			final Map<String, Object> changes = ElasticSearchAdapter.serializeFields(getMapper(clazz), model, dirtyFields);
+			if (changes == null || changes.isEmpty()) {
+				return null;
+			}
+			return ElasticSearchIndexEvent.update(model, changes);
+		} catch (final Throwable t) {
+			Logger.warn("Elastic Search - could not find the changes of %s, indexing the whole document: %s", model, ExceptionUtil.getStackTrace(t));
+			return null;
 		}
+	}
 
-		final ModelMapper<M> mapper = mapperFactory.getMapper(clazz);
-		mappers.put(clazz, mapper);
-		modelLookup.put(mapper.getTypeName(), clazz);
+	/**
+	 * Checks if the events of a JPA transaction should be sent as a single bulk request after commit, as configured by
+	 * <code>elasticsearch.transactional</code> (default false)
+	 * 
+	 * @return true to batch events per transaction
+	 */
+	private static boolean isTransactionalFromConfiguration() {
+		return Boolean.parseBoolean(Play.configuration.getProperty("elasticsearch.transactional", "false"));
+	}
+
+	/**
+	 * This method is called after all plugins have been started - It will replay the events left in the journal
+	 * 
+	 * @see play.PlayPlugin#afterApplicationStart()
+	 */
+	@Override
+	public void afterApplicationStart() {
+		final JournalIndexEventHandler journalHandler = findHandler(JournalIndexEventHandler.class);
+		if (journalHandler != null) {
+			journalHandler.recover();
+		}
+	}
 
-		return mapper;
+	/**
+	 * This method is called when the application stops - It will flush the events held back by the current delivery
+	 * mode, which is replaced on the next start, and seal the journal
+	 * 
+	 * @see play.PlayPlugin#onApplicationStop()
+	 */
+	@Override
+	public void onApplicationStop() {
+		final CoalescingIndexEventHandler coalescingHandler = findHandler(CoalescingIndexEventHandler.class);
+		if (coalescingHandler != null) {
+			coalescingHandler.close();
+		}
+		final JournalIndexEventHandler journalHandler = findHandler(JournalIndexEventHandler.class);
+		if (journalHandler != null) {
+			journalHandler.close();
+		}
+	}
+
+	/**
+	 * Builds the registry of the searchable application classes
+	 * 
+	 * @return the registry
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static ModelRegistry buildRegistry() {
+		final List<Class<?>> classes = new ArrayList<Class<?>>();
+		if (Play.classloader != null) {
+			for (final Class clazz : Play.classloader.getAllClasses()) {
+				classes.add(clazz);
+			}
+		}
+		final ModelRegistry modelRegistry = new ModelRegistry(classes, mapperFactory);
+		Logger.info("Elastic Search - %s searchable models", modelRegistry.getModels().size());
+		return modelRegistry;
+	}
+
+	/**
+	 * Checks if a class is searchable
+	 * 
+	 * @param clazz
+	 *            the class to check
+	 * @return true if searchable, false otherwise
+	 */
+	public static boolean isSearchable(final Class<?> clazz) {
+		return registry.isSearchable(clazz);
+	}
+
+	public static <M> ModelMapper<M> getMapper(final Class<M> clazz) {
+		return registry.getMapper(clazz);
 	}
 
 	private static void startIndexIfNeeded(final Class<Model> clazz) {
@@ -275,7 +538,7 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		Logger.debug("Processing %s Event", message);
 
 		// Check if object is searchable
-		if (MappingUtil.isSearchable(context.getClass()) == false) {
+		if (isSearchable(context.getClass()) == false) {
 			return;
 		}
 
@@ -290,14 +553,41 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		// Define Event
 		ElasticSearchIndexEvent event = null;
 		if (message.endsWith(".objectPersisted") || message.endsWith(".objectUpdated")) {
+			// Update changed fields only, if possible; transaction batches are sent as bulk requests which cannot hold updates
+			if (message.endsWith(".objectUpdated") && isPartialUpdatesFromConfiguration() && isTransactionalFromConfiguration() == false) {
+				event = createUpdateEvent(clazz, (Model) context);
+			}
+
 			// Index Model
-			event = new ElasticSearchIndexEvent((Model) context, ElasticSearchIndexEvent.Type.INDEX);
+			if (event == null) {
+				event = new ElasticSearchIndexEvent((Model) context, ElasticSearchIndexEvent.Type.INDEX);
+			}
 
 		} else if (message.endsWith(".objectDeleted")) {
 			// Delete Model from Index
 			event = new ElasticSearchIndexEvent((Model) context, ElasticSearchIndexEvent.Type.DELETE);
 		}
 
+		if (event != null) {
+			metrics.event(getMapper(clazz).getTypeName(), event.getType());
+			invalidateQueries(clazz);
+		}
+
+		// Send the events of a transaction together, once it has been committed
+		if (event != null && isTransactionalFromConfiguration() && TransactionIndexEventBatch.add(event)) {
+			Logger.debug("Elastic Search Index Event %s deferred until commit", event);
+			return;
+		}
+
+		// Serialize the document while the session of the model is still open
+		if (event != null && isSnapshotFromConfiguration()) {
+			try {
+				event = event.snapshot();
+			} catch (Throwable t) {
+				Logger.error("Could not take a snapshot of %s, queuing the model instead: %s", event, ExceptionUtil.getStackTrace(t));
+			}
+		}
+
 		// Sync with Elastic Search
 		Logger.info("Elastic Search Index Event: %s", event);
 		if (event != null) {
@@ -317,17 +607,32 @@ public class ElasticSearchPlugin extends PlayPlugin {
 		final Class<Model> clazz = (Class<Model>) model.getClass();
 
 		// Check if object is searchable
-		if (MappingUtil.isSearchable(clazz) == false) {
+		if (isSearchable(clazz) == false) {
 			throw new IllegalArgumentException("model is not searchable");
 		}
 
 		startIndexIfNeeded(clazz);
 
 		final ElasticSearchIndexEvent event = new ElasticSearchIndexEvent(model, Type.INDEX);
+		invalidateQueries(clazz);
 		final IndexEventHandler handler = deliveryMode.getHandler();
 		handler.handle(event);
 	}
 
+	/**
+	 * Drops the cached query responses of the index of a model class. Responses are dropped again once the request has
+	 * been sent, this covers events which are sent by another application.
+	 * 
+	 * @param clazz
+	 *            the model class
+	 */
+	private static void invalidateQueries(final Class<?> clazz) {
+		final QueryCache cache = queryCache;
+		if (cache != null) {
+			cache.invalidate(getMapper(clazz).getIndexName());
+		}
+	}
+
 	/**
 	 * Looks up the model class based on the index type name
 	 * 
@@ -335,20 +640,10 @@ public class ElasticSearchPlugin extends PlayPlugin {
 	 * @return Class of the Model
 	 */
 	public static Class<?> lookupModel(final String indexType) {
-		final Class<?> clazz = modelLookup.get(indexType);
-		if (clazz != null) { // we have not cached this model yet
+		final Class<?> clazz = registry.lookupModel(indexType);
+		if (clazz != null) {
 			return clazz;
 		}
-		final List<Class> searchableModels = Play.classloader.getAnnotatedClasses(ElasticSearchable.class);
-		for (final Class searchableModel : searchableModels) {
-			try {
-				if (indexType.equals(getMapper(searchableModel).getTypeName())) {
-					return searchableModel;
-				}
-			} catch (final MappingException ex) {
-				// mapper can not be retrieved
-			}
-		}
 		throw new IllegalArgumentException("Type name '" + indexType + "' is not searchable!");
 	}
 
@@ -0,0 +1,81 @@
+package play.modules.elasticsearch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import play.libs.F;
+
+/**
+ * Sends index events without waiting for the responses, but keeps the requests for the same document (index/type/id)
+ * in order: a request is only sent once the previous request for its document has been answered.
+ */
+public class InFlightIndexRequests {
+
+	/** Pending requests by document key */
+	private final ConcurrentMap<String, F.Promise<?>> inFlight = new ConcurrentHashMap<String, F.Promise<?>>();
+
+	/**
+	 * Sends an event, waiting for the previous request for the same document first. The event is marked as processed
+	 * once its response has arrived. May be called from several threads.
+	 *
+	 * @param indexEvent
+	 *            the index event
+	 * @throws InterruptedException
+	 */
+	public void send(final ElasticSearchIndexEvent indexEvent) throws InterruptedException {
+		final String key = indexEvent.getDocumentKey();
+
+		// Take the slot of the document first, so concurrent senders queue up behind each other
+		final F.Promise<Void> slot = new F.Promise<Void>();
+		F.Promise<?> previous = inFlight.put(key, slot);
+		final Runnable release = new Runnable() {
+			@Override
+			public void run() {
+				inFlight.remove(key, slot);
+				slot.invoke(null);
+				indexEvent.processed();
+			}
+		};
+
+		final F.Promise<?> promise;
+		try {
+			if (previous != null) {
+				try {
+					previous.get();
+				} catch (ExecutionException e) {
+					// Already logged by the index action
+				}
+			}
+
+			ElasticSearchIndexAction indexAction = new ElasticSearchIndexAction();
+			promise = indexAction.invokeAsync(indexEvent);
+		} catch (RuntimeException e) {
+			release.run();
+			throw e;
+		} catch (InterruptedException e) {
+			release.run();
+			throw e;
+		}
+
+		onRedeem(promise, release);
+	}
+
+	/**
+	 * Runs a callback once a promise is redeemed
+	 *
+	 * @param promise
+	 *            the promise
+	 * @param callback
+	 *            the callback
+	 */
+	private static <T> void onRedeem(F.Promise<T> promise, final Runnable callback) {
+		promise.onRedeem(new F.Action<F.Promise<T>>() {
+			@Override
+			public void invoke(F.Promise<T> result) {
+				callback.run();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,279 @@
+package play.modules.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import play.Logger;
+
+/**
+ * Write-ahead log of index events.
+ * 
+ * <p>Events are appended as references (model class, document id, type) to memory-mapped segment files. A segment is
+ * deleted once it is full and all of its events have been processed; the segment events are appended to is truncated
+ * instead. Segments left behind by a crash are read again by {@link #recover()}.
+ * 
+ * <p>Every record consists of its length followed by the reference and is terminated by a zero length; the length is
+ * written last, so a record which was only partially written is ignored on recovery.
+ */
+public class IndexEventJournal {
+
+	/** Segment file extension */
+	private static final String EXTENSION = ".journal";
+
+	/** The directory holding the segments */
+	private final File directory;
+
+	/** The size of a segment in bytes */
+	private final int segmentSize;
+
+	/** Force every record to the storage device */
+	private final boolean sync;
+
+	/** The segment events are appended to, guarded by this */
+	private Segment current;
+
+	/** The sequence number of the next segment, guarded by this */
+	private long nextSequence;
+
+	/**
+	 * Instantiates a new journal.
+	 * 
+	 * @param directory
+	 *            the directory holding the segments
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 * @param sync
+	 *            force every record to the storage device, instead of relying on the operating system to write it back
+	 */
+	public IndexEventJournal(File directory, int segmentSize, boolean sync) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.sync = sync;
+	}
+
+	/**
+	 * Appends an event
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the segment holding the event, to be acknowledged once the event has been processed
+	 * @throws IOException
+	 */
+	public synchronized Segment append(ElasticSearchIndexEvent event) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		event.writeReference(new DataOutputStream(bytes));
+		byte[] record = bytes.toByteArray();
+
+		// Keep room for the end marker
+		if (record.length + 8 > segmentSize) {
+			throw new IOException("Journal record of " + record.length + " bytes exceeds the segment size");
+		}
+		if (current == null || current.buffer.remaining() < record.length + 8) {
+			roll();
+		}
+
+		MappedByteBuffer buffer = current.buffer;
+		int position = buffer.position();
+		// End marker first, a truncated segment still holds older records
+		buffer.putInt(position + 4 + record.length, 0);
+		buffer.position(position + 4);
+		buffer.put(record);
+		buffer.putInt(position, record.length);
+		if (sync) {
+			buffer.force();
+		}
+
+		current.pending++;
+		return current;
+	}
+
+	/**
+	 * Acknowledges that an event of a segment has been processed
+	 * 
+	 * @param segment
+	 *            the segment
+	 */
+	public synchronized void acknowledge(Segment segment) {
+		segment.pending--;
+		if (segment.pending > 0) {
+			return;
+		}
+
+		if (segment.sealed) {
+			segment.delete();
+		} else if (segment == current) {
+			truncate();
+		}
+	}
+
+	/**
+	 * Seals the current segment, deleting it if all of its events have been processed, e.g. when the application
+	 * stops. Events appended afterwards go to a new segment.
+	 */
+	public synchronized void seal() {
+		if (current != null) {
+			current.sealed = true;
+			if (current.pending <= 0) {
+				current.delete();
+			}
+			current = null;
+		}
+	}
+
+	/**
+	 * Reads the segments left behind by a previous run. Events appended afterwards go to new segments.
+	 * 
+	 * @return the recovered events by segment, in order
+	 */
+	public synchronized Map<Segment, List<ElasticSearchIndexEvent>> recover() {
+		Map<Segment, List<ElasticSearchIndexEvent>> recovered = new LinkedHashMap<Segment, List<ElasticSearchIndexEvent>>();
+
+		directory.mkdirs();
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(EXTENSION);
+			}
+		});
+		if (files == null) {
+			return recovered;
+		}
+		Arrays.sort(files);
+
+		for (File file : files) {
+			long sequence = Long.parseLong(file.getName().substring(0, file.getName().length() - EXTENSION.length()));
+			nextSequence = Math.max(nextSequence, sequence + 1);
+
+			if (current != null && current.file.equals(file)) {
+				continue;
+			}
+
+			try {
+				Segment segment = new Segment(file, map(file, (int) file.length()));
+				List<ElasticSearchIndexEvent> events = segment.read();
+				segment.sealed = true;
+				segment.pending = events.size();
+
+				if (events.isEmpty()) {
+					segment.delete();
+				} else {
+					Logger.info("Recovered %s Elastic Search index events from %s", events.size(), file);
+					recovered.put(segment, events);
+				}
+			} catch (IOException e) {
+				Logger.error("Could not recover Elastic Search journal segment %s: %s", file, e.getMessage());
+			}
+		}
+
+		return recovered;
+	}
+
+	/**
+	 * Seals the current segment and starts a new one
+	 * 
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		seal();
+
+		directory.mkdirs();
+		File file = new File(directory, String.format("%019d%s", nextSequence++, EXTENSION));
+		current = new Segment(file, map(file, segmentSize));
+	}
+
+	/**
+	 * Truncates the current segment, once all of its events have been processed
+	 */
+	private void truncate() {
+		MappedByteBuffer buffer = current.buffer;
+		buffer.putInt(0, 0);
+		buffer.position(0);
+		if (sync) {
+			buffer.force();
+		}
+	}
+
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			// The mapping stays valid after closing the channel
+			raf.close();
+		}
+	}
+
+	/**
+	 * A segment file of the journal.
+	 */
+	public static class Segment {
+
+		/** The file. */
+		private final File file;
+
+		/** The mapped content. */
+		private final MappedByteBuffer buffer;
+
+		/** The number of events which have not been acknowledged yet. */
+		private int pending;
+
+		/** Flag that indicates that no more events will be appended. */
+		private boolean sealed;
+
+		Segment(File file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Reads all complete records
+		 * 
+		 * @return the events
+		 */
+		private List<ElasticSearchIndexEvent> read() {
+			List<ElasticSearchIndexEvent> events = new ArrayList<ElasticSearchIndexEvent>();
+			while (buffer.remaining() >= 4) {
+				int length = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining()) {
+					break;
+				}
+
+				byte[] record = new byte[length];
+				buffer.get(record);
+				try {
+					events.add(ElasticSearchIndexEvent.readReference(new DataInputStream(new ByteArrayInputStream(record))));
+				} catch (IOException e) {
+					Logger.error("Elastic Search - skipping journal record in %s: %s", file, e.getMessage());
+				}
+			}
+			return events;
+		}
+
+		private void delete() {
+			if (file.delete() == false) {
+				// Mapped files can not be deleted on some platforms
+				file.deleteOnExit();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Segment [file=" + file + ", pending=" + pending + ", sealed=" + sealed + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,351 @@
+package play.modules.elasticsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import play.Logger;
+
+/**
+ * Bounded queue of index events.
+ * 
+ * <p>The {@link OverflowPolicy} decides what happens when an event is added to a full queue. Spilled events are written
+ * to disk as references (model class, document id, type) and their models are loaded again once the queue catches up;
+ * the {@link ElasticSearchIndexEvent#getProcessedCallback() processed callbacks} of spilled events stay in memory, so
+ * events read back are still marked as processed. Dropped events are marked as processed right away. Events are
+ * always taken in the order they were added, spilled or not.
+ */
+public class IndexEventQueue {
+
+	/**
+	 * What to do when the queue is full.
+	 */
+	public static enum OverflowPolicy {
+
+		/** Block the producer until there is room. */
+		BLOCK,
+
+		/** Drop the oldest event in the queue. */
+		DROP_OLDEST,
+
+		/** Reject the new event with an {@link IllegalStateException}. */
+		REJECT,
+
+		/** Spill the new event to disk. */
+		SPILL;
+
+	}
+
+	/** The events held in memory, guarded by lock */
+	private final ArrayDeque<ElasticSearchIndexEvent> events;
+
+	/** The capacity */
+	private final int capacity;
+
+	/** The overflow policy */
+	private final OverflowPolicy policy;
+
+	/** The spill file, guarded by lock */
+	private final SpillFile spillFile;
+
+	/** The number of events which hit a full queue */
+	private final AtomicLong overflowCount = new AtomicLong();
+
+	/** The lock */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when events are added */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Signaled when events are taken */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Instantiates a new index event queue.
+	 * 
+	 * @param capacity
+	 *            the maximum number of events held in memory
+	 * @param policy
+	 *            the overflow policy
+	 * @param spillFile
+	 *            the file to spill to, only used by {@link OverflowPolicy#SPILL}
+	 */
+	public IndexEventQueue(int capacity, OverflowPolicy policy, File spillFile) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.events = new ArrayDeque<ElasticSearchIndexEvent>(Math.min(capacity, 1024));
+		this.capacity = capacity;
+		this.policy = policy;
+		this.spillFile = policy == OverflowPolicy.SPILL ? new SpillFile(spillFile) : null;
+	}
+
+	/**
+	 * Adds an event, applying the overflow policy if the queue is full
+	 * 
+	 * @param event
+	 *            the event
+	 * @throws InterruptedException
+	 *             if interrupted while blocking
+	 * @throws IllegalStateException
+	 *             if the queue is full and the policy is {@link OverflowPolicy#REJECT}
+	 */
+	public void put(ElasticSearchIndexEvent event) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			// Once we spill, keep spilling until the consumer caught up to preserve the order
+			if (spillFile != null && spillFile.hasPending()) {
+				overflowCount.incrementAndGet();
+				spill(event);
+				return;
+			}
+
+			if (events.size() >= capacity) {
+				overflowCount.incrementAndGet();
+
+				switch (policy) {
+				case BLOCK:
+					while (events.size() >= capacity) {
+						notFull.await();
+					}
+					break;
+				case DROP_OLDEST:
+					ElasticSearchIndexEvent dropped = events.poll();
+					Logger.warn("Elastic Search index queue is full, dropping %s", dropped);
+					dropped.processed();
+					break;
+				case REJECT:
+					throw new IllegalStateException("Elastic Search index queue is full, rejecting " + event);
+				case SPILL:
+					spill(event);
+					return;
+				}
+			}
+
+			events.add(event);
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next event, waiting if necessary
+	 * 
+	 * @return the event
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public ElasticSearchIndexEvent take() throws InterruptedException {
+		ElasticSearchIndexEvent event = null;
+		while (event == null) {
+			event = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		return event;
+	}
+
+	/**
+	 * Takes the next event, waiting up to the given time if necessary
+	 * 
+	 * @param timeout
+	 *            the time to wait
+	 * @param unit
+	 *            the time unit
+	 * @return the event, null if none became available
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public ElasticSearchIndexEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				ElasticSearchIndexEvent event = events.poll();
+				if (event != null) {
+					notFull.signal();
+					return event;
+				}
+
+				// Spilled events are newer than anything held in memory
+				if (spillFile != null && spillFile.hasPending()) {
+					try {
+						return spillFile.read();
+					} catch (IOException e) {
+						Logger.error("Elastic Search - skipping spilled event from %s: %s", spillFile.file, e.getMessage());
+						continue;
+					}
+				}
+
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void spill(ElasticSearchIndexEvent event) {
+		try {
+			spillFile.write(event);
+			notEmpty.signal();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not spill " + event + " to " + spillFile.file, e);
+		}
+	}
+
+	/**
+	 * Gets the number of queued events, including spilled ones
+	 * 
+	 * @return the queue depth
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return events.size() + (spillFile != null ? spillFile.pending() : 0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of events which were added to a full queue
+	 * 
+	 * @return the overflow count
+	 */
+	public long getOverflowCount() {
+		return overflowCount.get();
+	}
+
+	/**
+	 * File which holds spilled events in order.
+	 */
+	private static class SpillFile {
+
+		/** The file. */
+		private final File file;
+
+		/** The output, null if nothing has been spilled. */
+		private DataOutputStream out;
+
+		/** The input, null if nothing has been read. */
+		private DataInputStream in;
+
+		/** The number of written and read events. */
+		private int written, read;
+
+		/** The processed callbacks of the events which have not been read yet, null entries are not allowed */
+		private final Queue<Runnable> callbacks = new ArrayDeque<Runnable>();
+
+		SpillFile(File file) {
+			this.file = file;
+		}
+
+		boolean hasPending() {
+			return read < written;
+		}
+
+		int pending() {
+			return written - read;
+		}
+
+		void write(ElasticSearchIndexEvent event) throws IOException {
+			if (out == null) {
+				file.getParentFile().mkdirs();
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				Logger.warn("Elastic Search index queue is full, spilling events to %s", file);
+			}
+			event.writeReference(out);
+			Runnable callback = event.getProcessedCallback();
+			callbacks.add(callback != null ? callback : NO_CALLBACK);
+			written++;
+		}
+
+		ElasticSearchIndexEvent read() throws IOException {
+			out.flush();
+			if (in == null) {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			}
+			Runnable callback = callbacks.poll();
+			try {
+				ElasticSearchIndexEvent event = ElasticSearchIndexEvent.readReference(in);
+				return callback != NO_CALLBACK ? new SpilledIndexEvent(event, callback) : event;
+			} catch (IOException e) {
+				callback.run();
+				throw e;
+			} finally {
+				read++;
+
+				// Start over once the consumer caught up
+				if (read == written) {
+					reset();
+				}
+			}
+		}
+
+		void reset() {
+			try {
+				if (in != null) {
+					in.close();
+				}
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) {
+				Logger.warn("Could not close Elastic Search spill file %s: %s", file, e.getMessage());
+			}
+			in = null;
+			out = null;
+			written = 0;
+			read = 0;
+			file.delete();
+		}
+
+	}
+
+	/** Placeholder for spilled events without a processed callback */
+	private static final Runnable NO_CALLBACK = new Runnable() {
+		@Override
+		public void run() {
+			// Nothing to do
+		}
+	};
+
+	/**
+	 * Event read back from the spill file, which runs the processed callback of the spilled event.
+	 */
+	private static class SpilledIndexEvent extends ElasticSearchIndexEvent {
+
+		/** The processed callback of the spilled event. */
+		private final Runnable callback;
+
+		SpilledIndexEvent(ElasticSearchIndexEvent event, Runnable callback) {
+			super(event);
+			this.callback = callback;
+		}
+
+		@Override
+		public void processed() {
+			callback.run();
+		}
+
+		@Override
+		public Runnable getProcessedCallback() {
+			return callback;
+		}
+
+	}
+
+}
@@ -0,0 +1,308 @@
+package play.modules.elasticsearch;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Counters of the indexing pipeline: events per type, serialization time, Elastic Search round trips and failures.
+ *
+ * <p>All counters are cumulative since the metrics were created or {@link #reset() reset}; rates are averaged over
+ * that period. Recording is lock free, so it can be called from any thread.
+ */
+public class IndexMetrics {
+
+	/** Upper bounds of the latency histogram buckets in milliseconds, the last bucket is unbounded */
+	private static final long[] LATENCY_BUCKETS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+	/** Index and delete events per type */
+	private final ConcurrentMap<String, TypeCounters> types = new ConcurrentHashMap<String, TypeCounters>();
+
+	/** Number of serialized documents */
+	private final AtomicLong serializations = new AtomicLong();
+
+	/** Total serialization time in nanoseconds */
+	private final AtomicLong serializationNanos = new AtomicLong();
+
+	/** Number of requests per latency bucket */
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+	/** Total request time in milliseconds */
+	private final AtomicLong latencyMillis = new AtomicLong();
+
+	/** Number of failed documents or requests */
+	private final AtomicLong failures = new AtomicLong();
+
+	/** Time the counters were started */
+	private volatile long started = System.currentTimeMillis();
+
+	/**
+	 * Records an index event
+	 *
+	 * @param typeName
+	 *            the Elastic Search type of the document
+	 * @param type
+	 *            the event type
+	 */
+	public void event(String typeName, ElasticSearchIndexEvent.Type type) {
+		TypeCounters counters = types.get(typeName);
+		if (counters == null) {
+			TypeCounters created = new TypeCounters();
+			counters = types.putIfAbsent(typeName, created);
+			if (counters == null) {
+				counters = created;
+			}
+		}
+		(type == ElasticSearchIndexEvent.Type.DELETE ? counters.deletes : counters.indexes).incrementAndGet();
+	}
+
+	/**
+	 * Records the serialization of a document
+	 *
+	 * @param nanos
+	 *            the time taken in nanoseconds
+	 */
+	public void serialized(long nanos) {
+		serializations.incrementAndGet();
+		serializationNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records an Elastic Search round trip
+	 *
+	 * @param millis
+	 *            the time taken in milliseconds
+	 */
+	public void request(long millis) {
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+			bucket++;
+		}
+		latencies.incrementAndGet(bucket);
+		latencyMillis.addAndGet(millis);
+	}
+
+	/**
+	 * Records a failed document or request
+	 */
+	public void failure() {
+		failures.incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of failures
+	 *
+	 * @return the failure count
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Resets all counters
+	 */
+	public void reset() {
+		types.clear();
+		serializations.set(0);
+		serializationNanos.set(0);
+		for (int i = 0; i < latencies.length(); i++) {
+			latencies.set(i, 0);
+		}
+		latencyMillis.set(0);
+		failures.set(0);
+		started = System.currentTimeMillis();
+	}
+
+	/**
+	 * Renders the metrics as JSON
+	 *
+	 * @return the metrics
+	 */
+	public JsonObject toJson() {
+		double seconds = getElapsedSeconds();
+		JsonObject json = new JsonObject();
+		json.addProperty("elapsedSeconds", seconds);
+
+		JsonObject events = new JsonObject();
+		for (Map.Entry<String, TypeCounters> entry : getTypes().entrySet()) {
+			long indexes = entry.getValue().indexes.get();
+			long deletes = entry.getValue().deletes.get();
+			JsonObject type = new JsonObject();
+			type.addProperty("index", indexes);
+			type.addProperty("delete", deletes);
+			type.addProperty("indexPerSecond", indexes / seconds);
+			type.addProperty("deletePerSecond", deletes / seconds);
+			events.add(entry.getKey(), type);
+		}
+		json.add("events", events);
+
+		json.addProperty("queueDepth", ElasticSearchPlugin.getQueueDepth());
+		json.addProperty("queueOverflows", ElasticSearchPlugin.getQueueOverflowCount());
+		json.addProperty("coalescedEvents", ElasticSearchPlugin.getCoalescedEventCount());
+
+		DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints != null) {
+			JsonObject cache = new JsonObject();
+			cache.addProperty("capacity", fingerprints.getCapacity());
+			cache.addProperty("hits", fingerprints.getHitCount());
+			cache.addProperty("misses", fingerprints.getMissCount());
+			cache.addProperty("skips", fingerprints.getSkipCount());
+			json.add("fingerprints", cache);
+		}
+
+		QueryCache queryCache = ElasticSearchPlugin.getQueryCache();
+		if (queryCache != null) {
+			JsonObject cache = new JsonObject();
+			cache.addProperty("hits", queryCache.getHitCount());
+			cache.addProperty("misses", queryCache.getMissCount());
+			json.add("queryCache", cache);
+		}
+
+		JsonObject serialization = new JsonObject();
+		serialization.addProperty("count", serializations.get());
+		serialization.addProperty("averageMicros", getAverageSerializationMicros());
+		json.add("serialization", serialization);
+
+		JsonObject requests = new JsonObject();
+		requests.addProperty("count", getRequestCount());
+		requests.addProperty("averageMillis", getAverageLatencyMillis());
+		JsonArray histogram = new JsonArray();
+		for (int i = 0; i < latencies.length(); i++) {
+			JsonObject bucket = new JsonObject();
+			bucket.addProperty("le", getBucketLabel(i));
+			bucket.addProperty("count", latencies.get(i));
+			histogram.add(bucket);
+		}
+		requests.add("latencyMillis", histogram);
+		json.add("requests", requests);
+
+		json.addProperty("failures", failures.get());
+		return json;
+	}
+
+	/**
+	 * Renders the metrics for the Play status page
+	 *
+	 * @return the metrics
+	 */
+	@Override
+	public String toString() {
+		double seconds = getElapsedSeconds();
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		for (Map.Entry<String, TypeCounters> entry : getTypes().entrySet()) {
+			long indexes = entry.getValue().indexes.get();
+			long deletes = entry.getValue().deletes.get();
+			out.println(String.format("Type %-30s: %d index (%.2f/s), %d delete (%.2f/s)", entry.getKey(), indexes,
+					indexes / seconds, deletes, deletes / seconds));
+		}
+		out.println("Queue depth                    : " + ElasticSearchPlugin.getQueueDepth());
+		out.println("Queue overflows                : " + ElasticSearchPlugin.getQueueOverflowCount());
+		out.println("Coalesced events               : " + ElasticSearchPlugin.getCoalescedEventCount());
+		DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints != null) {
+			out.println(String.format("Fingerprints                   : %d hits, %d misses, %d unchanged skipped",
+					fingerprints.getHitCount(), fingerprints.getMissCount(), fingerprints.getSkipCount()));
+		}
+		QueryCache queryCache = ElasticSearchPlugin.getQueryCache();
+		if (queryCache != null) {
+			out.println(String.format("Query cache                    : %d hits, %d misses", queryCache.getHitCount(),
+					queryCache.getMissCount()));
+		}
+		out.println(String.format("Serialization                  : %d documents, %.1f us average", serializations.get(),
+				getAverageSerializationMicros()));
+		out.println(String.format("Requests                       : %d, %.1f ms average", getRequestCount(),
+				getAverageLatencyMillis()));
+		for (int i = 0; i < latencies.length(); i++) {
+			out.println(String.format("  <= %-6s ms                 : %d", getBucketLabel(i), latencies.get(i)));
+		}
+		out.println("Failures                       : " + failures.get());
+		out.flush();
+		return sw.toString();
+	}
+
+	/**
+	 * Gets the counters per type, sorted by type name
+	 *
+	 * @return the counters
+	 */
+	private Map<String, TypeCounters> getTypes() {
+		return new TreeMap<String, TypeCounters>(types);
+	}
+
+	/**
+	 * Gets the number of requests
+	 *
+	 * @return the request count
+	 */
+	private long getRequestCount() {
+		long count = 0;
+		for (int i = 0; i < latencies.length(); i++) {
+			count += latencies.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the average round trip time
+	 *
+	 * @return the average in milliseconds
+	 */
+	private double getAverageLatencyMillis() {
+		long count = getRequestCount();
+		return count > 0 ? (double) latencyMillis.get() / count : 0;
+	}
+
+	/**
+	 * Gets the average serialization time
+	 *
+	 * @return the average in microseconds
+	 */
+	private double getAverageSerializationMicros() {
+		long count = serializations.get();
+		return count > 0 ? (double) serializationNanos.get() / count / TimeUnit.MICROSECONDS.toNanos(1) : 0;
+	}
+
+	/**
+	 * Gets the number of seconds the counters cover
+	 *
+	 * @return the elapsed seconds, at least 1
+	 */
+	private double getElapsedSeconds() {
+		return Math.max(System.currentTimeMillis() - started, 1000) / 1000d;
+	}
+
+	/**
+	 * Gets the label of a latency bucket
+	 *
+	 * @param bucket
+	 *            the bucket index
+	 * @return the upper bound of the bucket
+	 */
+	private static String getBucketLabel(int bucket) {
+		return bucket < LATENCY_BUCKETS.length ? String.valueOf(LATENCY_BUCKETS[bucket]) : "+Inf";
+	}
+
+	/**
+	 * Event counters of a type
+	 */
+	private static class TypeCounters {
+
+		/** Number of index events */
+		final AtomicLong indexes = new AtomicLong();
+
+		/** Number of delete events */
+		final AtomicLong deletes = new AtomicLong();
+
+	}
+
+}
@@ -0,0 +1,154 @@
+package play.modules.elasticsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import play.Logger;
+import play.Play;
+import play.modules.elasticsearch.IndexEventJournal.Segment;
+
+/**
+ * Handler which processes events locally, like {@link LocalIndexEventHandler}, but first appends them to a
+ * write-ahead log on disk. Events which were not processed before a crash or redeploy are recovered on startup.
+ */
+public class JournalIndexEventHandler extends LocalIndexEventHandler {
+
+	/** The journal, opened on first use */
+	private IndexEventJournal journal;
+
+	/** Flag that indicates if the journal has been recovered */
+	private boolean recovered = false;
+
+	@Override
+	public void handle(ElasticSearchIndexEvent event) {
+		IndexEventJournal journal = getJournal();
+		Segment segment;
+		try {
+			segment = journal.append(event);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not write " + event + " to the Elastic Search journal", e);
+		}
+		try {
+			super.handle(new JournaledIndexEvent(event, journal, segment));
+		} catch (RuntimeException e) {
+			// Rejected by a full queue, the record is not needed
+			journal.acknowledge(segment);
+			throw e;
+		}
+	}
+
+	/**
+	 * Queues the events left behind by a previous run. Only the first call has an effect.
+	 */
+	public synchronized void recover() {
+		if (recovered) {
+			return;
+		}
+		recovered = true;
+
+		IndexEventJournal journal = getJournal();
+		for (Map.Entry<Segment, List<ElasticSearchIndexEvent>> entry : journal.recover().entrySet()) {
+			for (ElasticSearchIndexEvent event : entry.getValue()) {
+				super.handle(new JournaledIndexEvent(event, journal, entry.getKey()));
+			}
+		}
+	}
+
+	/**
+	 * Seals the journal segment events are appended to, deleting it if all of its events have been processed
+	 */
+	public synchronized void close() {
+		if (journal != null) {
+			journal.seal();
+		}
+	}
+
+	/**
+	 * Gets the journal, opening it if needed
+	 * 
+	 * @return the journal
+	 */
+	private synchronized IndexEventJournal getJournal() {
+		if (journal == null) {
+			File directory = getDirectory("elasticsearch.journal.dir", "elasticsearch/journal");
+			Logger.info("Journaling Elastic Search index events to %s", directory);
+			journal = new IndexEventJournal(directory, getSegmentSize(), isSync());
+		}
+		return journal;
+	}
+
+	/**
+	 * Gets the size of a journal segment.
+	 * 
+	 * @return the segment size in bytes
+	 */
+	private static int getSegmentSize() {
+		return (int) ByteSizeValue.parseBytesSizeValue(Play.configuration.getProperty("elasticsearch.journal.segmentSize", "16mb")).bytes();
+	}
+
+	/**
+	 * Checks if every record should be forced to the storage device.
+	 * 
+	 * @return true to force every record, false to rely on the operating system
+	 */
+	private static boolean isSync() {
+		return Boolean.parseBoolean(Play.configuration.getProperty("elasticsearch.journal.sync", "false"));
+	}
+
+	/**
+	 * Event which acknowledges its journal record once processed.
+	 */
+	private static class JournaledIndexEvent extends ElasticSearchIndexEvent {
+
+		/** The journal. */
+		private final IndexEventJournal journal;
+
+		/** The segment holding the record. */
+		private final Segment segment;
+
+		JournaledIndexEvent(ElasticSearchIndexEvent event, IndexEventJournal journal, Segment segment) {
+			super(event);
+			this.journal = journal;
+			this.segment = segment;
+		}
+
+		@Override
+		public void processed() {
+			journal.acknowledge(segment);
+		}
+
+		@Override
+		public Runnable getProcessedCallback() {
+			return new Acknowledgement(journal, segment);
+		}
+
+	}
+
+	/**
+	 * Acknowledges a journal record, without holding on to the event.
+	 */
+	private static class Acknowledgement implements Runnable {
+
+		/** The journal. */
+		private final IndexEventJournal journal;
+
+		/** The segment holding the record. */
+		private final Segment segment;
+
+		Acknowledgement(IndexEventJournal journal, Segment segment) {
+			this.journal = journal;
+			this.segment = segment;
+		}
+
+		@Override
+		public void run() {
+			journal.acknowledge(segment);
+		}
+
+	}
+
+}
@@ -1,24 +1,170 @@
 package play.modules.elasticsearch;
 
+import java.io.File;
+
+import play.Logger;
+import play.Play;
+import play.modules.elasticsearch.IndexEventQueue.OverflowPolicy;
+
 /**
- * Handler which processes events locally
+ * Handler which processes events locally.
+ * 
+ * <p>Events are processed by a pool of indexer workers (<code>elasticsearch.local.workers</code>, default 1). Each
+ * document is always routed to the same worker, so the events of a single document are applied in order.
+ * 
+ * <p>Every worker has a bounded queue (<code>elasticsearch.queue.capacity</code>, default 10000), the
+ * <code>elasticsearch.queue.overflow</code> setting decides what happens when it is full (see {@link OverflowPolicy},
+ * default BLOCK).
  */
 public class LocalIndexEventHandler implements IndexEventHandler {
 
-	/** Flag that indicates if the indexer has been started */
-	private static boolean indexerStarted = false;
+	/** The indexer workers, started on the first event */
+	private volatile ElasticSearchIndexer[] workers;
 
 	@Override
 	public void handle(ElasticSearchIndexEvent event) {
-		if (indexerStarted == false) {
-			new ElasticSearchIndexer().now();
-			indexerStarted = true;
+		ElasticSearchIndexer[] workers = getWorkers();
+		int shard = (event.getDocumentKey().hashCode() & Integer.MAX_VALUE) % workers.length;
+		try {
+			workers[shard].queue.put(event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing " + event, e);
+		}
+	}
+
+	/**
+	 * Gets the number of queued events of all workers
+	 * 
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		if (workers != null) {
+			for (ElasticSearchIndexer worker : workers) {
+				depth += worker.queue.size();
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * Gets the number of events which were added to a full queue
+	 * 
+	 * @return the overflow count
+	 */
+	public long getOverflowCount() {
+		long count = 0;
+		if (workers != null) {
+			for (ElasticSearchIndexer worker : workers) {
+				count += worker.queue.getOverflowCount();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Creates the indexer job for a worker
+	 * 
+	 * @param queue
+	 *            the queue of the worker
+	 * @return the indexer job
+	 */
+	protected ElasticSearchIndexer createIndexer(IndexEventQueue queue) {
+		return new ElasticSearchIndexer(queue);
+	}
+
+	/**
+	 * Gets the workers, starting them if needed
+	 * 
+	 * @return the workers
+	 */
+	private ElasticSearchIndexer[] getWorkers() {
+		if (workers == null) {
+			synchronized (this) {
+				if (workers == null) {
+					workers = startWorkers(getWorkerCount());
+				}
+			}
+		}
+		return workers;
+	}
+
+	private ElasticSearchIndexer[] startWorkers(int count) {
+		// Every worker keeps a thread of the Play jobs pool busy
+		int poolSize = Integer.parseInt(Play.configuration.getProperty("play.jobs.pool", "10"));
+		if (count >= poolSize) {
+			Logger.warn("%s Elastic Search indexer workers will occupy the whole jobs pool (play.jobs.pool=%s)", count, poolSize);
 		}
-		ElasticSearchIndexer.stream.publish(event);
+
+		int capacity = getQueueCapacity();
+		OverflowPolicy policy = getOverflowPolicy();
+		File spillDir = getSpillDirectory();
+
+		Logger.info("Starting %s Elastic Search indexer worker(s), queue capacity %s, overflow policy %s", count, capacity, policy);
+		ElasticSearchIndexer[] indexers = new ElasticSearchIndexer[count];
+		for (int i = 0; i < count; i++) {
+			File spillFile = new File(spillDir, getClass().getSimpleName() + "-" + i + ".spill");
+			indexers[i] = createIndexer(new IndexEventQueue(capacity, policy, spillFile));
+			indexers[i].now();
+		}
+		return indexers;
+	}
+
+	/**
+	 * Gets the number of indexer workers.
+	 * 
+	 * @return the number of workers
+	 */
+	private static int getWorkerCount() {
+		int count = Integer.parseInt(Play.configuration.getProperty("elasticsearch.local.workers", "1"));
+		return Math.max(count, 1);
 	}
 
-	static void markIndexerStarted() {
-		indexerStarted = true;
+	/**
+	 * Gets the queue capacity per worker.
+	 * 
+	 * @return the queue capacity
+	 */
+	private static int getQueueCapacity() {
+		return Integer.parseInt(Play.configuration.getProperty("elasticsearch.queue.capacity", "10000"));
+	}
+
+	/**
+	 * Gets the overflow policy.
+	 * 
+	 * @return the overflow policy
+	 */
+	private static OverflowPolicy getOverflowPolicy() {
+		return OverflowPolicy.valueOf(Play.configuration.getProperty("elasticsearch.queue.overflow", "BLOCK").toUpperCase());
+	}
+
+	/**
+	 * Gets the directory for spilled events.
+	 * 
+	 * @return the spill directory
+	 */
+	private static File getSpillDirectory() {
+		return getDirectory("elasticsearch.queue.spillDir", "elasticsearch");
+	}
+
+	/**
+	 * Gets a directory from the configuration
+	 * 
+	 * @param key
+	 *            the configuration key
+	 * @param defaultName
+	 *            the default directory, relative to the Play tmp directory
+	 * @return the directory
+	 */
+	static File getDirectory(String key, String defaultName) {
+		String dir = Play.configuration.getProperty(key);
+		if (dir != null) {
+			File file = new File(dir);
+			return file.isAbsolute() ? file : Play.getFile(dir);
+		}
+		File tmpDir = Play.tmpDir != null ? Play.tmpDir : new File(System.getProperty("java.io.tmpdir"));
+		return new File(tmpDir, defaultName);
 	}
 
 }
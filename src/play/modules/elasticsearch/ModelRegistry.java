@@ -0,0 +1,148 @@
+package play.modules.elasticsearch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Logger;
+import play.modules.elasticsearch.mapping.MapperFactory;
+import play.modules.elasticsearch.mapping.MappingException;
+import play.modules.elasticsearch.mapping.MappingUtil;
+import play.modules.elasticsearch.mapping.ModelMapper;
+import play.modules.elasticsearch.util.ExceptionUtil;
+
+/**
+ * The searchable models of the application with their mappers and type names, built once when the application starts
+ * so checking whether a class is searchable and looking up a model by type name is a single hash probe.
+ *
+ * <p>Classes which are not application classes, like Hibernate proxies or models packaged in modules, are checked
+ * and mapped the first time they are seen and remembered separately.
+ */
+public class ModelRegistry {
+
+	/** Mappers of the searchable application classes, null if the class could not be mapped */
+	private final Map<Class<?>, ModelMapper<?>> mappers;
+
+	/** Searchable application classes by type name */
+	private final Map<String, Class<?>> models;
+
+	/** Whether other classes are searchable */
+	private final Map<Class<?>, Boolean> otherSearchable = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	/** Mappers of other classes */
+	private final Map<Class<?>, ModelMapper<?>> otherMappers = new ConcurrentHashMap<Class<?>, ModelMapper<?>>();
+
+	/** Other classes by type name */
+	private final Map<String, Class<?>> otherModels = new ConcurrentHashMap<String, Class<?>>();
+
+	/** The mapper factory */
+	private final MapperFactory mapperFactory;
+
+	/**
+	 * Builds the registry of a set of classes
+	 *
+	 * @param classes
+	 *            the application classes, searchable or not
+	 * @param mapperFactory
+	 *            the mapper factory
+	 */
+	public ModelRegistry(Collection<Class<?>> classes, MapperFactory mapperFactory) {
+		this.mapperFactory = mapperFactory;
+
+		Map<Class<?>, ModelMapper<?>> mappers = new IdentityHashMap<Class<?>, ModelMapper<?>>();
+		Map<String, Class<?>> models = new HashMap<String, Class<?>>();
+		for (Class<?> clazz : classes) {
+			if (MappingUtil.isSearchable(clazz) == false) {
+				continue;
+			}
+
+			ModelMapper<?> mapper = null;
+			try {
+				mapper = mapperFactory.getMapper(clazz);
+				models.put(mapper.getTypeName(), clazz);
+			} catch (MappingException e) {
+				Logger.warn("Elastic Search - could not map %s: %s", clazz.getName(), ExceptionUtil.getStackTrace(e));
+			}
+			mappers.put(clazz, mapper);
+		}
+
+		this.mappers = Collections.unmodifiableMap(mappers);
+		this.models = Collections.unmodifiableMap(models);
+	}
+
+	/**
+	 * Gets the searchable application classes
+	 *
+	 * @return the classes
+	 */
+	public Set<Class<?>> getModels() {
+		return mappers.keySet();
+	}
+
+	/**
+	 * Checks if a class is searchable
+	 *
+	 * @param clazz
+	 *            the class to check
+	 * @return true if searchable, false otherwise
+	 */
+	public boolean isSearchable(Class<?> clazz) {
+		if (mappers.containsKey(clazz)) {
+			return true;
+		}
+
+		Boolean searchable = otherSearchable.get(clazz);
+		if (searchable == null) {
+			searchable = MappingUtil.isSearchable(clazz);
+			otherSearchable.put(clazz, searchable);
+		}
+		return searchable;
+	}
+
+	/**
+	 * Gets the mapper of a class
+	 *
+	 * @param <M>
+	 *            the model type
+	 * @param clazz
+	 *            the model class
+	 * @return the mapper
+	 * @throws MappingException
+	 *             if the class cannot be mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public <M> ModelMapper<M> getMapper(Class<M> clazz) throws MappingException {
+		ModelMapper<M> mapper = (ModelMapper<M>) mappers.get(clazz);
+		if (mapper != null) {
+			return mapper;
+		}
+
+		mapper = (ModelMapper<M>) otherMappers.get(clazz);
+		if (mapper == null) {
+			mapper = mapperFactory.getMapper(clazz);
+			otherMappers.put(clazz, mapper);
+			otherModels.put(mapper.getTypeName(), clazz);
+		}
+		return mapper;
+	}
+
+	/**
+	 * Looks up the model class based on the index type name
+	 *
+	 * @param typeName
+	 *            the index type name
+	 * @return the model class, null if there is no such type
+	 */
+	public Class<?> lookupModel(String typeName) {
+		Class<?> clazz = models.get(typeName);
+		if (clazz == null) {
+			clazz = otherModels.get(typeName);
+		}
+		return clazz;
+	}
+
+}
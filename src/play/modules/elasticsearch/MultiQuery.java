@@ -0,0 +1,128 @@
+package play.modules.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+
+import play.Logger;
+import play.db.Model;
+import play.modules.elasticsearch.search.SearchResults;
+
+/**
+ * Runs several queries with a single multi search request. Each query is
+ * transformed as if it was fetched on its own.
+ *
+ * <pre>
+ * MultiQuery multiQuery = ElasticSearch.multiQuery().add(posts).add(users).fetch();
+ * SearchResults&lt;Post&gt; postResults = multiQuery.getResults(posts);
+ * </pre>
+ */
+public class MultiQuery {
+
+	/** The queries, in the order they were added */
+	private final List<Query<?>> queries = new ArrayList<Query<?>>();
+
+	/** The responses by query, once fetched */
+	private final Map<Query<?>, SearchResponse> responses = new IdentityHashMap<Query<?>, SearchResponse>();
+
+	/** The failures by query, once fetched */
+	private final Map<Query<?>, String> failures = new IdentityHashMap<Query<?>, String>();
+
+	MultiQuery() {
+		// Use ElasticSearch.multiQuery()
+	}
+
+	/**
+	 * Adds a query. A query which has already been fetched is fetched again.
+	 *
+	 * @param query
+	 *            the query
+	 * @return self
+	 */
+	public MultiQuery add(Query<?> query) {
+		responses.remove(query);
+		failures.remove(query);
+		if (queries.contains(query) == false) {
+			queries.add(query);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Runs all queries which have not been fetched yet. Cached responses are
+	 * reused, the other queries are sent together. If the multi search
+	 * fails, the queries stay pending and are sent again by the next fetch.
+	 *
+	 * @return self
+	 */
+	public MultiQuery fetch() {
+		long sent = System.currentTimeMillis();
+		MultiSearchRequestBuilder multiRequest = ElasticSearchPlugin.client().prepareMultiSearch();
+		List<Query<?>> sentQueries = new ArrayList<Query<?>>();
+		List<SearchRequestBuilder> requests = new ArrayList<SearchRequestBuilder>();
+		for (Query<?> query : queries) {
+			SearchRequestBuilder request = query.prepare();
+			SearchResponse cachedResponse = query.getCachedResponse(request, sent);
+			if (cachedResponse != null) {
+				responses.put(query, cachedResponse);
+			} else {
+				multiRequest.add(request);
+				sentQueries.add(query);
+				requests.add(request);
+			}
+		}
+
+		if (sentQueries.isEmpty()) {
+			queries.clear();
+			return this;
+		}
+
+		Logger.debug("ES Multi Search: %s queries", sentQueries.size());
+		MultiSearchResponse multiResponse = multiRequest.execute().actionGet();
+		MultiSearchResponse.Item[] items = multiResponse.responses();
+		for (int i = 0; i < items.length; i++) {
+			Query<?> query = sentQueries.get(i);
+			if (items[i].isFailure()) {
+				failures.put(query, items[i].failureMessage());
+			} else {
+				responses.put(query, items[i].response());
+				query.cacheResponse(requests.get(i), items[i].response(), sent);
+			}
+		}
+		queries.clear();
+		return this;
+	}
+
+	/**
+	 * Gets the results of a query, fetching all pending queries if needed
+	 *
+	 * @param <T>
+	 *            the generic model type
+	 * @param query
+	 *            the query, added before
+	 * @return the search results
+	 * @throws ElasticSearchException
+	 *             if the query failed
+	 */
+	public <T extends Model> SearchResults<T> getResults(Query<T> query) {
+		if (queries.contains(query)) {
+			fetch();
+		}
+
+		SearchResponse searchResponse = responses.get(query);
+		if (searchResponse == null) {
+			String failure = failures.get(query);
+			throw new ElasticSearchException(failure != null ? failure : "Query has not been added: " + query);
+		}
+		return query.toSearchResults(searchResponse);
+	}
+
+}
@@ -4,8 +4,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang.Validate;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.facet.AbstractFacetBuilder;
 import org.elasticsearch.search.sort.SortBuilder;
@@ -14,10 +16,16 @@ import org.elasticsearch.search.sort.SortOrder;
 
 import play.Logger;
 import play.db.Model;
+import play.jobs.Job;
+import play.libs.F;
 import play.modules.elasticsearch.search.SearchResults;
+import play.modules.elasticsearch.search.SearchRows;
+import play.modules.elasticsearch.search.SearchStream;
 import play.modules.elasticsearch.transformer.JPATransformer;
-import play.modules.elasticsearch.transformer.MapperTransformer;
+import play.modules.elasticsearch.transformer.RowTransformer;
 import play.modules.elasticsearch.transformer.SimpleTransformer;
+import play.modules.elasticsearch.transformer.StreamingTransformer;
+import play.modules.elasticsearch.transformer.Transformer;
 
 /**
  * An elastic search query
@@ -37,6 +45,8 @@ public class Query<T extends Model> {
 
 	private boolean hydrate = false;
 	private boolean useMapper = false;
+	private boolean cache = false;
+	private String[] fields = null;
 
 	Query(Class<T> clazz, QueryBuilder builder) {
 		Validate.notNull(clazz, "clazz cannot be null");
@@ -99,6 +109,35 @@ public class Query<T extends Model> {
 		return this;
 	}
 
+	/**
+	 * Controls caching of the response, if a query cache is configured with
+	 * <code>elasticsearch.queryCache.size</code>
+	 * 
+	 * @param cache
+	 *            reuse the response of the same query until its index is
+	 *            written to
+	 * @return self
+	 */
+	public Query<T> cache(boolean cache) {
+		this.cache = cache;
+
+		return this;
+	}
+
+	/**
+	 * Sets the fields to return with {@link #fetchRows()}
+	 * 
+	 * @param fields
+	 *            the fields, stored or read from the source by Elastic Search
+	 * @return self
+	 */
+	public Query<T> fields(String... fields) {
+		Validate.notEmpty(fields, "fields cannot be empty");
+		this.fields = fields.clone();
+
+		return this;
+	}
+
 	/**
 	 * Adds a facet
 	 * 
@@ -150,6 +189,132 @@ public class Query<T extends Model> {
 	 * @return the search results
 	 */
 	public SearchResults<T> fetch() {
+		return toSearchResults(execute(prepare()));
+	}
+
+	/**
+	 * Counts the hits of the query with the count API, without scoring or
+	 * fetching any documents. Facets, sorts and paging are ignored.
+	 * 
+	 * @return the number of hits
+	 */
+	public long count() {
+		if (Logger.isDebugEnabled()) {
+			Logger.debug("ES Count: %s", builder.toString());
+		}
+		return ElasticSearchPlugin.client().prepareCount(getIndexName()).setQuery(builder).execute().actionGet().count();
+	}
+
+	/**
+	 * Runs the query as a projection, returning the values of the fields set
+	 * with {@link #fields(String...)} instead of models. Only these fields are
+	 * sent back by Elastic Search.
+	 * 
+	 * @return the search rows
+	 */
+	public SearchRows fetchRows() {
+		Validate.notNull(fields, "fields must be set before fetching rows");
+		SearchRequestBuilder request = prepare().addFields(fields);
+		return new RowTransformer().toSearchRows(execute(request), fields);
+	}
+
+	/**
+	 * Iterates over all results of the query, fetching and transforming
+	 * batches through a scroll instead of pages. Facets, sorts and paging are
+	 * ignored. Hydrated entities are detached from the persistence context of
+	 * the calling thread once the next batch is fetched, so memory stays
+	 * constant; save changes to an entity before moving on.
+	 * 
+	 * @param batchSize
+	 *            the number of results to fetch from each shard at once
+	 * @return the results, fetched while iterating
+	 */
+	public SearchStream<T> stream(int batchSize) {
+		Validate.isTrue(batchSize > 0, "batchSize must be positive");
+		SearchRequestBuilder request = ElasticSearch.builder(builder, clazz).setSearchType(SearchType.SCAN)
+				.setScroll(SearchStream.KEEP_ALIVE).setSize(batchSize);
+
+		// Only load id field for hydrate
+		if (hydrate) {
+			request.addField("_id");
+		}
+
+		return new SearchStream<T>(ElasticSearchPlugin.client(), request, clazz, getTransformer(), hydrate);
+	}
+
+	/**
+	 * Runs the query without waiting for the response, so a controller can
+	 * <code>await()</code> the results without blocking its thread. Hydrated
+	 * entities are loaded by a job in a transaction of its own.
+	 * 
+	 * @return the promise of the search results
+	 */
+	public F.Promise<SearchResults<T>> fetchAsync() {
+		final F.Promise<SearchResults<T>> promise = new F.Promise<SearchResults<T>>();
+		final SearchRequestBuilder request = prepare();
+
+		final long sent = System.currentTimeMillis();
+		SearchResponse cachedResponse = getCachedResponse(request, sent);
+		if (cachedResponse != null) {
+			complete(promise, cachedResponse);
+			return promise;
+		}
+
+		request.execute(new ActionListener<SearchResponse>() {
+			@Override
+			public void onResponse(SearchResponse searchResponse) {
+				cacheResponse(request, searchResponse, sent);
+				complete(promise, searchResponse);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				promise.invokeWithException(t);
+			}
+		});
+		return promise;
+	}
+
+	/**
+	 * Transforms a response and redeems the promise of the search results.
+	 * Entities can only be hydrated in a thread with a JPA context, so this is
+	 * left to a job instead of the Elastic Search thread.
+	 * 
+	 * @param promise
+	 *            the promise of the search results
+	 * @param searchResponse
+	 *            the search response
+	 */
+	private void complete(final F.Promise<SearchResults<T>> promise, final SearchResponse searchResponse) {
+		if (hydrate) {
+			new Job<Void>() {
+				@Override
+				public void doJob() {
+					redeem(promise, searchResponse);
+				}
+			}.now();
+		} else {
+			redeem(promise, searchResponse);
+		}
+	}
+
+	private void redeem(F.Promise<SearchResults<T>> promise, SearchResponse searchResponse) {
+		SearchResults<T> searchResults;
+		try {
+			searchResults = toSearchResults(searchResponse);
+		} catch (Throwable t) {
+			promise.invokeWithException(t);
+			return;
+		}
+		promise.invoke(searchResults);
+	}
+
+	/**
+	 * Builds the search request
+	 * 
+	 * @return the search request
+	 */
+	SearchRequestBuilder prepare() {
 		// Build request
 		SearchRequestBuilder request = ElasticSearch.builder(builder, clazz);
 
@@ -179,16 +344,107 @@ public class Query<T extends Model> {
 		if (Logger.isDebugEnabled()) {
 			Logger.debug("ES Query: %s", builder.toString());
 		}
+		return request;
+	}
 
-		SearchResponse searchResponse = request.execute().actionGet();
-		SearchResults<T> searchResults = null;
+	/**
+	 * Transforms the search response
+	 * 
+	 * @param searchResponse
+	 *            the search response
+	 * @return the search results
+	 */
+	SearchResults<T> toSearchResults(SearchResponse searchResponse) {
+		return getTransformer().toSearchResults(searchResponse, clazz);
+	}
+
+	/**
+	 * Gets the transformer for the search responses
+	 * 
+	 * @return the transformer
+	 */
+	private Transformer<T> getTransformer() {
 		if (hydrate) {
-			searchResults = new JPATransformer<T>().toSearchResults(searchResponse, clazz);
+			return new JPATransformer<T>();
 		} else if (useMapper) {
-			searchResults = new MapperTransformer<T>().toSearchResults(searchResponse, clazz);
+			return new StreamingTransformer<T>();
 		} else {
-			searchResults = new SimpleTransformer<T>().toSearchResults(searchResponse, clazz);
+			return new SimpleTransformer<T>();
+		}
+	}
+
+	/**
+	 * Executes the search request, or takes the response from the query cache
+	 * 
+	 * @param request
+	 *            the search request
+	 * @return the search response
+	 */
+	private SearchResponse execute(SearchRequestBuilder request) {
+		long sent = System.currentTimeMillis();
+		SearchResponse searchResponse = getCachedResponse(request, sent);
+		if (searchResponse == null) {
+			searchResponse = request.execute().actionGet();
+			cacheResponse(request, searchResponse, sent);
+		}
+		return searchResponse;
+	}
+
+	/**
+	 * Gets the cached response of a search request
+	 * 
+	 * @param request
+	 *            the search request
+	 * @param sent
+	 *            the time the request would be sent
+	 * @return the response, null if the query is not cached or there is no
+	 *         valid response
+	 */
+	SearchResponse getCachedResponse(SearchRequestBuilder request, long sent) {
+		QueryCache queryCache = getQueryCache();
+		if (queryCache == null) {
+			return null;
+		}
+
+		SearchResponse searchResponse = queryCache.get(getIndexName(), request.toString(), sent);
+		if (searchResponse != null) {
+			Logger.debug("ES Query served from cache");
+		}
+		return searchResponse;
+	}
+
+	/**
+	 * Caches the response of a search request, if the query is cached
+	 * 
+	 * @param request
+	 *            the search request
+	 * @param searchResponse
+	 *            the search response
+	 * @param sent
+	 *            the time the request was sent
+	 */
+	void cacheResponse(SearchRequestBuilder request, SearchResponse searchResponse, long sent) {
+		QueryCache queryCache = getQueryCache();
+		if (queryCache != null) {
+			queryCache.put(getIndexName(), request.toString(), searchResponse, sent);
 		}
-		return searchResults;
+	}
+
+	/**
+	 * Gets the name of the index to search
+	 * 
+	 * @return the index name
+	 */
+	private String getIndexName() {
+		return ElasticSearchPlugin.getMapper(clazz).getIndexName();
+	}
+
+	/**
+	 * Gets the query cache
+	 * 
+	 * @return the cache, null if the response should not be cached
+	 */
+	private QueryCache getQueryCache() {
+		return cache ? ElasticSearchPlugin.getQueryCache() : null;
 	}
 }
@@ -0,0 +1,194 @@
+package play.modules.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.search.SearchResponse;
+
+/**
+ * A bounded LRU cache of search responses for queries which opted in with
+ * {@link Query#cache(boolean)}, keyed by index and request source.
+ *
+ * <p>A response is dropped once its time to live has passed, or once a
+ * document of its index has been written since the request was sent. A
+ * write only becomes visible after the next refresh of the index, so
+ * responses to requests sent within the refresh interval after a write are
+ * not kept either.
+ */
+public class QueryCache {
+
+	/** Refresh interval of Elastic Search indices */
+	static final long REFRESH_MILLIS = 1000;
+
+	/** Maximum number of responses */
+	private final int size;
+
+	/** Time to live of a response */
+	private final long ttlMillis;
+
+	/** Responses by key, least recently used first */
+	private final Map<String, CachedResponse> entries;
+
+	/** Time of the last write per index */
+	private final Map<String, Long> writes = new ConcurrentHashMap<String, Long>();
+
+	/** Time of the last write to any index */
+	private volatile long lastWrite = Long.MIN_VALUE;
+
+	/** Lookups which found a response */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** Lookups which did not find a response */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param size
+	 *            the maximum number of responses
+	 * @param ttlMillis
+	 *            the time to live of a response
+	 */
+	public QueryCache(int size, long ttlMillis) {
+		this.size = size;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+				return size() > QueryCache.this.size;
+			}
+		};
+	}
+
+	/**
+	 * Gets a cached response
+	 *
+	 * @param index
+	 *            the index name
+	 * @param source
+	 *            the request source
+	 * @param now
+	 *            the current time
+	 * @return the response, null if there is no valid response
+	 */
+	public SearchResponse get(String index, String source, long now) {
+		String key = getKey(index, source);
+		CachedResponse entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry != null && isValid(entry, now) == false) {
+				entries.remove(key);
+				entry = null;
+			}
+		}
+
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.response;
+	}
+
+	/**
+	 * Caches a response, unless the index was written to since shortly before
+	 * the request was sent
+	 *
+	 * @param index
+	 *            the index name
+	 * @param source
+	 *            the request source
+	 * @param response
+	 *            the response
+	 * @param sent
+	 *            the time the request was sent
+	 */
+	public void put(String index, String source, SearchResponse response, long sent) {
+		CachedResponse entry = new CachedResponse(index, response, sent);
+		if (isValid(entry, sent)) {
+			synchronized (entries) {
+				entries.put(getKey(index, source), entry);
+			}
+		}
+	}
+
+	/**
+	 * Marks an index as written to, so its cached responses are dropped
+	 *
+	 * @param index
+	 *            the index name
+	 */
+	public void invalidate(String index) {
+		writes.put(index, System.currentTimeMillis());
+	}
+
+	/**
+	 * Marks all indices as written to, e.g. if the indices of a failed
+	 * request are not known
+	 */
+	public void invalidateAll() {
+		lastWrite = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the number of lookups which found a response
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups which did not find a response
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Checks if a response is still valid
+	 *
+	 * @param entry
+	 *            the cached response
+	 * @param now
+	 *            the current time
+	 * @return true if valid
+	 */
+	private boolean isValid(CachedResponse entry, long now) {
+		if (now - entry.sent >= ttlMillis) {
+			return false;
+		}
+		Long write = writes.get(entry.index);
+		long lastWriteToIndex = Math.max(write != null ? write : Long.MIN_VALUE, lastWrite);
+		return lastWriteToIndex == Long.MIN_VALUE || entry.sent >= lastWriteToIndex + REFRESH_MILLIS;
+	}
+
+	private static String getKey(String index, String source) {
+		return index + '\n' + source;
+	}
+
+	/**
+	 * A cached response
+	 */
+	private static class CachedResponse {
+
+		private final String index;
+		private final SearchResponse response;
+		private final long sent;
+
+		CachedResponse(String index, SearchResponse response, long sent) {
+			this.index = index;
+			this.response = response;
+			this.sent = sent;
+		}
+
+	}
+
+}
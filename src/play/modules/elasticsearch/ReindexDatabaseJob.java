@@ -10,7 +10,6 @@ import play.db.Model;
 import play.db.Model.Factory;
 import play.db.jpa.JPA;
 import play.jobs.Job;
-import play.modules.elasticsearch.mapping.MappingUtil;
 
 public class ReindexDatabaseJob extends Job<Void> {
 
@@ -44,11 +43,17 @@ public class ReindexDatabaseJob extends Job<Void> {
 
 	@Override
 	public void doJob() throws Exception {
+		// Send every document, even if the index lost it since it was last sent
+		final DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints != null) {
+			fingerprints.clear();
+		}
+
 		final Set<ManagedType<?>> types = JPA.em().getMetamodel().getManagedTypes();
 		for (final ManagedType managedType : types) {
 			final Class modelClass = managedType.getJavaType();
 			// Proceed only if searchable
-			if (!MappingUtil.isSearchable(modelClass)) {
+			if (!ElasticSearchPlugin.isSearchable(modelClass)) {
 				continue;
 			}
 
@@ -66,6 +71,7 @@ public class ReindexDatabaseJob extends Job<Void> {
 			// loop over pages
 			while (offset < count) {
 				final List results = factory.fetch((int) offset, PAGE_SIZE, null, null, null, null, null);
+				BatchFetcher.fetch(modelClass, results);
 				// loop over individual entities within one page
 				for (final Object o : results) {
 					ElasticSearch.index((Model) o, deliveryMode);
@@ -0,0 +1,120 @@
+package play.modules.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityTransaction;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import play.Logger;
+import play.db.jpa.JPA;
+import play.modules.elasticsearch.util.ExceptionUtil;
+
+/**
+ * Collects the index events of a JPA transaction and hands them to the delivery mode once the transaction has been
+ * committed. Events of a transaction which is rolled back are discarded.
+ *
+ * <p>Documents are serialized right before the transaction completes, while the session is still open. Repeated
+ * events for the same document collapse to the latest one.
+ */
+public class TransactionIndexEventBatch implements Synchronization {
+
+	/** The batch of the current thread */
+	private static final ThreadLocal<TransactionIndexEventBatch> current = new ThreadLocal<TransactionIndexEventBatch>();
+
+	/** The transaction of this batch */
+	private final Transaction transaction;
+
+	/** Pending events by document key */
+	private final Map<String, ElasticSearchIndexEvent> events = new LinkedHashMap<String, ElasticSearchIndexEvent>();
+
+	/**
+	 * Instantiates a new batch.
+	 *
+	 * @param transaction
+	 *            the transaction
+	 */
+	private TransactionIndexEventBatch(Transaction transaction) {
+		this.transaction = transaction;
+	}
+
+	/**
+	 * Adds an event to the batch of the current JPA transaction
+	 *
+	 * @param event
+	 *            the index event
+	 * @return true if the event was added, false if there is no active transaction
+	 */
+	public static boolean add(ElasticSearchIndexEvent event) {
+		if (JPA.isInsideTransaction() == false) {
+			return false;
+		}
+		EntityTransaction entityTransaction = JPA.em().getTransaction();
+		if (entityTransaction.isActive() == false) {
+			return false;
+		}
+
+		Transaction transaction = ((Session) JPA.em().getDelegate()).getTransaction();
+		TransactionIndexEventBatch batch = current.get();
+		if (batch == null || batch.transaction != transaction) {
+			batch = new TransactionIndexEventBatch(transaction);
+			transaction.registerSynchronization(batch);
+			current.set(batch);
+		}
+		batch.events.put(event.getDocumentKey(), event);
+		return true;
+	}
+
+	/**
+	 * Serializes the documents while the session is still open
+	 *
+	 * @see javax.transaction.Synchronization#beforeCompletion()
+	 */
+	@Override
+	public void beforeCompletion() {
+		for (Map.Entry<String, ElasticSearchIndexEvent> entry : events.entrySet()) {
+			try {
+				entry.setValue(entry.getValue().snapshot());
+			} catch (Throwable t) {
+				// Never fail the transaction because of the index
+				Logger.error("Could not take a snapshot of %s: %s", entry.getValue(), ExceptionUtil.getStackTrace(t));
+			}
+		}
+	}
+
+	/**
+	 * Sends the batch if the transaction has been committed
+	 *
+	 * @see javax.transaction.Synchronization#afterCompletion(int)
+	 */
+	@Override
+	public void afterCompletion(int status) {
+		if (current.get() == this) {
+			current.remove();
+		}
+
+		if (status != Status.STATUS_COMMITTED) {
+			Logger.debug("Elastic Search - transaction not committed, discarding %s events", events.size());
+			return;
+		}
+		if (events.isEmpty()) {
+			return;
+		}
+
+		// Go through the delivery mode, which keeps the events of a document in order
+		IndexEventHandler handler = ElasticSearchPlugin.getDeliveryMode().getHandler();
+		for (ElasticSearchIndexEvent event : events.values()) {
+			try {
+				handler.handle(event);
+			} catch (Throwable t) {
+				ElasticSearchPlugin.getMetrics().failure();
+				Logger.error("Elastic Search - skipping %s: %s", event, ExceptionUtil.getStackTrace(t));
+			}
+		}
+	}
+
+}
@@ -18,21 +18,46 @@
  */
 package play.modules.elasticsearch.adapter;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.indices.IndexAlreadyExistsException;
 
 import play.Logger;
+import play.Play;
 import play.db.Model;
+import play.libs.F;
+import play.modules.elasticsearch.DocumentFingerprints;
+import play.modules.elasticsearch.ElasticSearchPlugin;
+import play.modules.elasticsearch.QueryCache;
 import play.modules.elasticsearch.mapping.MappingUtil;
 import play.modules.elasticsearch.mapping.ModelMapper;
 import play.modules.elasticsearch.util.ExceptionUtil;
@@ -42,6 +67,23 @@ import play.modules.elasticsearch.util.ExceptionUtil;
  */
 public abstract class ElasticSearchAdapter {
 
+	/** Largest buffer kept for reuse by a thread */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+	/** Serialization buffers, reused by every thread */
+	private static final ThreadLocal<BytesStreamOutput> buffers = new ThreadLocal<BytesStreamOutput>() {
+		@Override
+		protected BytesStreamOutput initialValue() {
+			return new BytesStreamOutput(4 * 1024);
+		}
+	};
+
+	/** Wire format for documents, read on first use */
+	private static volatile XContentType contentType;
+
+	/** Limits the number of asynchronous requests on the wire, created on first use */
+	private static Semaphore inFlightPermits;
+
 	/**
 	 * Start index.
 	 * 
@@ -102,7 +144,9 @@ public abstract class ElasticSearchAdapter {
 			Logger.debug("Create Elastic Search Type %s/%s", indexName, typeName);
 			PutMappingRequest request = Requests.putMappingRequest(indexName).type(typeName);
 			XContentBuilder mapping = MappingUtil.getMapping(mapper);
-			Logger.debug("Type mapping: \n %s", mapping.string());
+			if (Logger.isDebugEnabled()) {
+				Logger.debug("Type mapping: \n %s", mapping.string());
+			}
 			request.source(mapping);
 			PutMappingResponse response = client.admin().indices().putMapping(request).actionGet();
 			Logger.debug("Response: %s", response);
@@ -139,31 +183,18 @@ public abstract class ElasticSearchAdapter {
 			return;
 		}
 
-		// Define Content Builder
-		XContentBuilder contentBuilder = null;
+		// Skip Unchanged Model
+		IndexRequestBuilder request = prepareIndexModel(client, mapper, model);
+		if (isUnchanged(request)) {
+			Logger.debug("Index Model unchanged, skipping: %s", model);
+			return;
+		}
 
 		// Index Model
-		try {
-			// Define Index Name
-			String indexName = mapper.getIndexName();
-			String typeName = mapper.getTypeName();
-			String documentId = mapper.getDocumentId(model);
-			Logger.debug("Index Name: %s", indexName);
-
-			contentBuilder = XContentFactory.jsonBuilder().prettyPrint();
-			mapper.addModel(model, contentBuilder);
-			Logger.debug("Index json: %s", contentBuilder.string());
-			IndexResponse response = client.prepareIndex(indexName, typeName, documentId)
-					.setSource(contentBuilder).execute().actionGet();
-
-			// Log Debug
-			Logger.info("Index Response: %s", response);
+		IndexResponse response = execute(request);
 
-		} finally {
-			if (contentBuilder != null) {
-				contentBuilder.close();
-			}
-		}
+		// Log Debug
+		Logger.info("Index Response: %s", response);
 	}
 
 	/**
@@ -183,13 +214,527 @@ public abstract class ElasticSearchAdapter {
 	public static <T extends Model> void deleteModel(Client client, ModelMapper<T> mapper, T model)
 			throws Exception {
 		Logger.debug("Delete Model: %s", model);
+		deleteDocument(client, mapper, mapper.getDocumentId(model));
+	}
+
+	/**
+	 * Delete a document by id, e.g. when the model itself is no longer
+	 * available.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param documentId
+	 *            the document id
+	 */
+	public static void deleteDocument(Client client, ModelMapper<?> mapper, String documentId) {
+		DeleteResponse response = execute(prepareDeleteDocument(client, mapper, documentId).setOperationThreaded(false));
+		Logger.debug("Delete Response: %s", response);
+	}
+
+	/**
+	 * Prepares an index request for a model without executing it, e.g. to add
+	 * it to a bulk request.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param model
+	 *            the model
+	 * @return the index request builder
+	 * @throws IOException
+	 *             if the model could not be serialized
+	 */
+	public static <T extends Model> IndexRequestBuilder prepareIndexModel(Client client, ModelMapper<T> mapper, T model)
+			throws IOException {
+		return prepareIndexDocument(client, mapper, mapper.getDocumentId(model), serialize(mapper, model));
+	}
+
+	/**
+	 * Prepares an index request for an already serialized document without
+	 * executing it.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param documentId
+	 *            the document id
+	 * @param source
+	 *            the document source
+	 * @return the index request builder
+	 * @throws IOException
+	 *             if the source could not be rendered for the debug log
+	 */
+	public static IndexRequestBuilder prepareIndexDocument(Client client, ModelMapper<?> mapper, String documentId,
+			byte[] source) throws IOException {
 		String indexName = mapper.getIndexName();
 		String typeName = mapper.getTypeName();
-		String documentId = mapper.getDocumentId(model);
-		DeleteResponse response = client.prepareDelete(indexName, typeName, documentId)
-				.setOperationThreaded(false).execute().actionGet();
-		Logger.debug("Delete Response: %s", response);
 
+		if (Logger.isDebugEnabled()) {
+			Logger.debug("Index %s/%s/%s: %s", indexName, typeName, documentId,
+					XContentHelper.convertToJson(source, 0, source.length, false));
+		}
+		return client.prepareIndex(indexName, typeName, documentId).setSource(source);
+	}
+
+	/**
+	 * Checks if an index request sends the same source as the last request for
+	 * its document, so it can be skipped. The new source is remembered
+	 * otherwise, and forgotten again if the request fails.
+	 * 
+	 * @param request
+	 *            the index request
+	 * @return true if the source is unchanged, always false unless
+	 *         <code>elasticsearch.fingerprints</code> is set
+	 */
+	public static boolean isUnchanged(IndexRequestBuilder request) {
+		DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints == null) {
+			return false;
+		}
+		IndexRequest index = request.request();
+		return fingerprints.update(index.index(), index.type(), index.id(), index.underlyingSource(),
+				index.underlyingSourceOffset(), index.underlyingSourceLength());
+	}
+
+	/**
+	 * Forgets the fingerprint of a document, so the next index request is sent
+	 * 
+	 * @param index
+	 *            the index name
+	 * @param type
+	 *            the type name
+	 * @param id
+	 *            the document id
+	 */
+	private static void forgetFingerprint(String index, String type, String id) {
+		DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints != null) {
+			fingerprints.remove(index, type, id);
+		}
+	}
+
+	/**
+	 * Forgets the fingerprints of the documents of a failed request. The items
+	 * of a bulk request are not known, so all fingerprints are forgotten.
+	 * 
+	 * @param request
+	 *            the failed request
+	 */
+	private static void forgetFingerprints(ActionRequestBuilder<?, ?> request) {
+		DocumentFingerprints fingerprints = ElasticSearchPlugin.getFingerprints();
+		if (fingerprints == null) {
+			return;
+		}
+		if (request instanceof IndexRequestBuilder) {
+			IndexRequest index = ((IndexRequestBuilder) request).request();
+			fingerprints.remove(index.index(), index.type(), index.id());
+		} else if (request instanceof BulkRequestBuilder) {
+			fingerprints.clear();
+		}
+	}
+
+	/**
+	 * Drops the cached query responses of the indices a request wrote to. If
+	 * the indices of a bulk request are not known, all responses are dropped.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response, null if the request failed
+	 */
+	private static void invalidateQueries(ActionRequestBuilder<?, ?> request, ActionResponse response) {
+		QueryCache cache = ElasticSearchPlugin.getQueryCache();
+		if (cache == null) {
+			return;
+		}
+		if (request instanceof IndexRequestBuilder) {
+			cache.invalidate(((IndexRequestBuilder) request).request().index());
+		} else if (request instanceof DeleteRequestBuilder) {
+			cache.invalidate(((DeleteRequestBuilder) request).request().index());
+		} else if (request instanceof UpdateRequestBuilder) {
+			cache.invalidate(((UpdateRequestBuilder) request).request().index());
+		} else if (request instanceof BulkRequestBuilder) {
+			if (response instanceof BulkResponse) {
+				for (BulkItemResponse item : (BulkResponse) response) {
+					cache.invalidate(item.index());
+				}
+			} else {
+				cache.invalidateAll();
+			}
+		}
+	}
+
+	/**
+	 * Serializes a model into a buffer owned by the calling thread, then copies
+	 * the exact bytes, so a document is encoded once without any intermediate
+	 * growth of fresh buffers.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param mapper
+	 *            the model mapper
+	 * @param model
+	 *            the model
+	 * @return the document source
+	 * @throws IOException
+	 *             if the model could not be serialized
+	 */
+	public static <T extends Model> byte[] serialize(ModelMapper<T> mapper, T model) throws IOException {
+		long start = System.nanoTime();
+		BytesStreamOutput buffer = buffers.get();
+		buffer.reset();
+		try {
+			XContentBuilder contentBuilder = XContentFactory.contentBuilder(getContentType(), buffer);
+			try {
+				mapper.addModel(model, contentBuilder);
+			} finally {
+				contentBuilder.close();
+			}
+			byte[] source = buffer.copiedByteArray();
+			ElasticSearchPlugin.getMetrics().serialized(System.nanoTime() - start);
+			return source;
+		} finally {
+			// Don't hold on to the buffer of an exceptionally large document
+			if (buffer.underlyingBytes().length > MAX_RETAINED_BUFFER_SIZE) {
+				buffers.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the new values of some fields of a model, as they would be indexed
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param mapper
+	 *            the model mapper
+	 * @param model
+	 *            the model
+	 * @param fieldNames
+	 *            the names of the model fields
+	 * @return the values by document field, null values for fields to remove;
+	 *         null if the fields cannot be updated on their own
+	 * @throws IOException
+	 *             if the fields could not be serialized
+	 * @see ModelMapper#addModelFields(Object, Collection, XContentBuilder)
+	 */
+	public static <T extends Model> Map<String, Object> serializeFields(ModelMapper<T> mapper, T model,
+			Collection<String> fieldNames) throws IOException {
+		XContentBuilder contentBuilder = XContentFactory.jsonBuilder();
+		List<String> indexFields = mapper.addModelFields(model, fieldNames, contentBuilder);
+		if (indexFields == null) {
+			return null;
+		}
+
+		Map<String, Object> values = XContentHelper.convertToMap(contentBuilder.underlyingBytes(), 0,
+				contentBuilder.underlyingBytesLength(), false).v2();
+		Map<String, Object> changes = new LinkedHashMap<String, Object>();
+		for (String indexField : indexFields) {
+			changes.put(indexField, values.get(indexField));
+		}
+		return changes;
+	}
+
+	/**
+	 * Prepares an update request which only changes some fields of a document,
+	 * through a script as the document is stored as a whole.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param documentId
+	 *            the document id
+	 * @param changes
+	 *            the new values by document field, null to remove a field
+	 * @return the update request builder
+	 */
+	public static UpdateRequestBuilder prepareUpdateDocument(Client client, ModelMapper<?> mapper, String documentId,
+			Map<String, Object> changes) {
+		UpdateRequestBuilder request = client.prepareUpdate(mapper.getIndexName(), mapper.getTypeName(), documentId);
+		forgetFingerprint(mapper.getIndexName(), mapper.getTypeName(), documentId);
+
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		String script = createUpdateScript(changes, parameters);
+
+		if (Logger.isDebugEnabled()) {
+			Logger.debug("Update %s/%s/%s: %s", mapper.getIndexName(), mapper.getTypeName(), documentId, changes);
+		}
+
+		// Like a full index request, the last update wins
+		return request.setScript(script).setScriptParams(parameters).setRetryOnConflict(3);
+	}
+
+	/**
+	 * Creates the script of an update request. Values are passed as
+	 * parameters, so the script is the same for every update of the same
+	 * fields and is compiled only once.
+	 * 
+	 * @param changes
+	 *            the new values by document field, null to remove a field
+	 * @param parameters
+	 *            receives the script parameters
+	 * @return the script
+	 */
+	public static String createUpdateScript(Map<String, Object> changes, Map<String, Object> parameters) {
+		StringBuilder script = new StringBuilder();
+		for (Map.Entry<String, Object> change : changes.entrySet()) {
+			if (change.getValue() == null) {
+				script.append("ctx._source.remove('").append(change.getKey()).append("'); ");
+			} else {
+				String name = "p" + parameters.size();
+				script.append("ctx._source['").append(change.getKey()).append("'] = ").append(name).append("; ");
+				parameters.put(name, change.getValue());
+			}
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Gets the wire format for documents, configured by
+	 * <code>elasticsearch.contentType</code>: <code>json</code> (default) or
+	 * the binary <code>smile</code>
+	 * 
+	 * @return the content type
+	 */
+	private static XContentType getContentType() {
+		if (contentType == null) {
+			String type = Play.configuration.getProperty("elasticsearch.contentType", "json");
+			contentType = XContentType.valueOf(type.toUpperCase());
+		}
+		return contentType;
+	}
+
+	/**
+	 * Prepares a delete request for a model without executing it, e.g. to add
+	 * it to a bulk request.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param model
+	 *            the model
+	 * @return the delete request builder
+	 */
+	public static <T extends Model> DeleteRequestBuilder prepareDeleteModel(Client client, ModelMapper<T> mapper, T model) {
+		return prepareDeleteDocument(client, mapper, mapper.getDocumentId(model));
+	}
+
+	/**
+	 * Prepares a delete request for a document id without executing it.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param documentId
+	 *            the document id
+	 * @return the delete request builder
+	 */
+	public static DeleteRequestBuilder prepareDeleteDocument(Client client, ModelMapper<?> mapper, String documentId) {
+		String indexName = mapper.getIndexName();
+		String typeName = mapper.getTypeName();
+		forgetFingerprint(indexName, typeName, documentId);
+		return client.prepareDelete(indexName, typeName, documentId);
+	}
+
+	/**
+	 * Executes a bulk request. Failures are reported per item, so a single bad
+	 * document does not affect the rest of the batch.
+	 * 
+	 * @param bulkRequest
+	 *            the bulk request
+	 * @return the bulk response
+	 */
+	public static BulkResponse executeBulk(BulkRequestBuilder bulkRequest) {
+		Logger.debug("Bulk Request: %s actions", bulkRequest.numberOfActions());
+		BulkResponse response = execute(bulkRequest);
+		logBulkFailures(response);
+		Logger.debug("Bulk Response: %s items in %sms", response.items().length, response.tookInMillis());
+		return response;
+	}
+
+	/**
+	 * Executes a bulk request without waiting for the response. Failures are
+	 * logged per item.
+	 * 
+	 * @param bulkRequest
+	 *            the bulk request
+	 * @return the promise of the bulk response
+	 * @see #executeAsync(ActionRequestBuilder)
+	 */
+	public static F.Promise<BulkResponse> executeBulkAsync(BulkRequestBuilder bulkRequest) {
+		Logger.debug("Bulk Request (async): %s actions", bulkRequest.numberOfActions());
+		F.Promise<BulkResponse> promise = executeAsync(bulkRequest);
+		promise.onRedeem(new F.Action<F.Promise<BulkResponse>>() {
+			@Override
+			public void invoke(F.Promise<BulkResponse> result) {
+				try {
+					logBulkFailures(result.get());
+				} catch (Exception e) {
+					ElasticSearchPlugin.getMetrics().failure();
+					Logger.error("Elastic Search bulk request failed: %s", ExceptionUtil.getStackTrace(e));
+				}
+			}
+		});
+		return promise;
+	}
+
+	/**
+	 * Logs the failed items of a bulk response
+	 * 
+	 * @param response
+	 *            the bulk response
+	 */
+	private static void logBulkFailures(BulkResponse response) {
+		if (response.hasFailures()) {
+			for (BulkItemResponse item : response) {
+				if (item.failed()) {
+					forgetFingerprint(item.index(), item.type(), item.id());
+					ElasticSearchPlugin.getMetrics().failure();
+					Logger.error("Elastic Search bulk %s failed for %s/%s/%s: %s", item.opType(), item.index(),
+							item.type(), item.id(), item.failureMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Index model without waiting for the response.
+	 * 
+	 * @param <T>
+	 *            the generic type
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param model
+	 *            the model
+	 * @return the promise of the index response
+	 * @throws Exception
+	 *             the exception
+	 * @see #executeAsync(ActionRequestBuilder)
+	 */
+	public static <T extends Model> F.Promise<IndexResponse> indexModelAsync(Client client, ModelMapper<T> mapper,
+			T model) throws Exception {
+		Logger.debug("Index Model (async): %s", model);
+		IndexRequestBuilder request = prepareIndexModel(client, mapper, model);
+		if (isUnchanged(request)) {
+			Logger.debug("Index Model unchanged, skipping: %s", model);
+			F.Promise<IndexResponse> skipped = new F.Promise<IndexResponse>();
+			skipped.invoke(null);
+			return skipped;
+		}
+		return executeAsync(request);
+	}
+
+	/**
+	 * Delete a document by id without waiting for the response.
+	 * 
+	 * @param client
+	 *            the client
+	 * @param mapper
+	 *            the model mapper
+	 * @param documentId
+	 *            the document id
+	 * @return the promise of the delete response
+	 * @see #executeAsync(ActionRequestBuilder)
+	 */
+	public static F.Promise<DeleteResponse> deleteDocumentAsync(Client client, ModelMapper<?> mapper, String documentId) {
+		return executeAsync(prepareDeleteDocument(client, mapper, documentId));
+	}
+
+	/**
+	 * Executes a request and waits for the response, recording the round trip
+	 * in the metrics.
+	 * 
+	 * @param <R>
+	 *            the response type
+	 * @param request
+	 *            the request
+	 * @return the response
+	 */
+	public static <R extends ActionResponse> R execute(ActionRequestBuilder<?, R> request) {
+		long start = System.currentTimeMillis();
+		R response;
+		try {
+			response = request.execute().actionGet();
+		} catch (RuntimeException e) {
+			forgetFingerprints(request);
+			invalidateQueries(request, null);
+			throw e;
+		}
+		invalidateQueries(request, response);
+		ElasticSearchPlugin.getMetrics().request(System.currentTimeMillis() - start);
+		return response;
+	}
+
+	/**
+	 * Executes a request without waiting for the response. The number of
+	 * requests in flight is limited by
+	 * <code>elasticsearch.async.maxInFlight</code> (default 64); once the
+	 * limit is reached, the calling thread blocks until a response arrives.
+	 * 
+	 * @param <R>
+	 *            the response type
+	 * @param request
+	 *            the request
+	 * @return the promise of the response, redeemed from an Elastic Search
+	 *         thread
+	 */
+	public static <R extends ActionResponse> F.Promise<R> executeAsync(final ActionRequestBuilder<?, R> request) {
+		final Semaphore permits = getInFlightPermits();
+		final F.Promise<R> promise = new F.Promise<R>();
+
+		permits.acquireUninterruptibly();
+		final long start = System.currentTimeMillis();
+		try {
+			request.execute(new ActionListener<R>() {
+				@Override
+				public void onResponse(R response) {
+					permits.release();
+					ElasticSearchPlugin.getMetrics().request(System.currentTimeMillis() - start);
+					invalidateQueries(request, response);
+					Logger.debug("Async Response: %s", response);
+					promise.invoke(response);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					permits.release();
+					forgetFingerprints(request);
+					invalidateQueries(request, null);
+					promise.invokeWithException(t);
+				}
+			});
+		} catch (RuntimeException e) {
+			permits.release();
+			forgetFingerprints(request);
+			throw e;
+		}
+		return promise;
+	}
+
+	/**
+	 * Gets the permits for asynchronous requests
+	 * 
+	 * @return the permits
+	 */
+	private static synchronized Semaphore getInFlightPermits() {
+		if (inFlightPermits == null) {
+			int maxInFlight = Integer.parseInt(Play.configuration.getProperty("elasticsearch.async.maxInFlight", "64"));
+			inFlightPermits = new Semaphore(Math.max(maxInFlight, 1));
+		}
+		return inFlightPermits;
 	}
 
 }
@@ -29,6 +29,11 @@ import java.lang.annotation.Target;
  * <p>
  * You can use the <code>fields</code> attribute to specify which fields should
  * be embedded. Leave empty to embed all fields.
+ * 
+ * <p>
+ * Set <code>fetch</code> to <code>batch</code> for lazy associations, so
+ * reindexing loads them for a whole page of models with one query instead of
+ * one query per model.
  */
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
@@ -42,7 +47,14 @@ public @interface ElasticSearchEmbedded {
 	/** embedding mode to use */
 	Mode mode() default Mode.embedded;
 
+	/** loading strategy when many models are indexed at once */
+	Fetch fetch() default Fetch.lazy;
+
 	public enum Mode {
 		embedded, nested, object
 	}
+
+	public enum Fetch {
+		lazy, batch
+	}
 }
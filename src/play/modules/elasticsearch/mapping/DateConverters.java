@@ -0,0 +1,237 @@
+package play.modules.elasticsearch.mapping;
+
+import java.util.Date;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+
+import play.Logger;
+import play.modules.elasticsearch.util.ExceptionUtil;
+
+/**
+ * Converters for date values read from Elastic Search. Epoch millis are used
+ * as they are and the ISO 8601 formats written by the mappers are decoded
+ * with plain arithmetic; other formats fall back to the Joda parsers, which
+ * are thread-safe and shared.
+ */
+abstract class DateConverters {
+
+	/** Returned by the fast parsers if the value does not have the expected format */
+	private static final long INVALID = Long.MIN_VALUE;
+
+	/** Days per month of a common year */
+	private static final int[] DAYS_PER_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/** Converts to {@link Date} */
+	static final ValueConverter DATE = new ValueConverter() {
+		@Override
+		public Object convert(Object value) {
+			if (value instanceof Date) {
+				return value;
+			} else if (value instanceof Number) {
+				return new Date(((Number) value).longValue());
+			}
+
+			String text = value.toString();
+			if (text.length() == 0) {
+				return null;
+			}
+			long millis = parseEpochMillis(text);
+			if (millis == INVALID) {
+				millis = parseDateTime(text);
+			}
+			if (millis != INVALID) {
+				return new Date(millis);
+			}
+
+			try {
+				// Use ES internal converter
+				return XContentBuilder.defaultDatePrinter.parseDateTime(text).toDate();
+			} catch (Throwable t) {
+				Logger.error(ExceptionUtil.getStackTrace(t), text);
+			}
+			return null;
+		}
+	};
+
+	/** Converts to {@link LocalDateTime}, written as yyyy-MM-ddTHH:mm:ss.SSS */
+	static final ValueConverter LOCAL_DATE_TIME = new ValueConverter() {
+		@Override
+		public Object convert(Object value) {
+			if (value instanceof LocalDateTime) {
+				return value;
+			}
+
+			String text = value.toString();
+			if (text.length() == 23 && text.charAt(10) == 'T' && text.charAt(19) == '.' && isDate(text)) {
+				int hour = parseDigits(text, 11, 2);
+				int minute = parseDigits(text, 14, 2);
+				int second = parseDigits(text, 17, 2);
+				int millis = parseDigits(text, 20, 3);
+				if (hour >= 0 && minute >= 0 && second >= 0 && millis >= 0 && text.charAt(13) == ':'
+						&& text.charAt(16) == ':') {
+					return new LocalDateTime(parseDigits(text, 0, 4), parseDigits(text, 5, 2), parseDigits(text, 8, 2),
+							hour, minute, second, millis);
+				}
+			}
+			return LocalDateTime.parse(text);
+		}
+	};
+
+	/** Converts to {@link LocalDate}, written as yyyy-MM-dd */
+	static final ValueConverter LOCAL_DATE = new ValueConverter() {
+		@Override
+		public Object convert(Object value) {
+			if (value instanceof LocalDate) {
+				return value;
+			}
+
+			String text = value.toString();
+			if (text.length() == 10 && isDate(text)) {
+				return new LocalDate(parseDigits(text, 0, 4), parseDigits(text, 5, 2), parseDigits(text, 8, 2));
+			}
+			return LocalDate.parse(text);
+		}
+	};
+
+	private DateConverters() {
+		// No public instantiation allowed
+	}
+
+	/**
+	 * Parses epoch millis
+	 *
+	 * @param text
+	 *            the text
+	 * @return the millis, {@link #INVALID} if the text is not a number
+	 */
+	static long parseEpochMillis(String text) {
+		int start = text.charAt(0) == '-' ? 1 : 0;
+		// Leave short numbers like years to the Joda parsers
+		if (text.length() - start < 5) {
+			return INVALID;
+		} else if (text.length() - start > 18) {
+			try {
+				return Long.parseLong(text);
+			} catch (NumberFormatException e) {
+				return INVALID;
+			}
+		}
+
+		long millis = 0;
+		for (int i = start; i < text.length(); i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			millis = millis * 10 + digit;
+		}
+		return start == 0 ? millis : -millis;
+	}
+
+	/**
+	 * Parses the UTC date times printed by Elastic Search:
+	 * yyyy-MM-ddTHH:mm:ss.SSSZ, yyyy-MM-ddTHH:mm:ssZ and yyyy-MM-dd
+	 *
+	 * @param text
+	 *            the text
+	 * @return the epoch millis, {@link #INVALID} if the text has another
+	 *         format
+	 */
+	static long parseDateTime(String text) {
+		int length = text.length();
+		if ((length != 10 && length != 20 && length != 24) || isDate(text) == false) {
+			return INVALID;
+		}
+
+		long millis = daysSinceEpoch(parseDigits(text, 0, 4), parseDigits(text, 5, 2), parseDigits(text, 8, 2))
+				* 86400000L;
+		if (length == 10) {
+			return millis;
+		}
+
+		if (text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':'
+				|| text.charAt(length - 1) != 'Z') {
+			return INVALID;
+		}
+		int hour = parseDigits(text, 11, 2);
+		int minute = parseDigits(text, 14, 2);
+		int second = parseDigits(text, 17, 2);
+		int fraction = 0;
+		if (length == 24) {
+			fraction = text.charAt(19) == '.' ? parseDigits(text, 20, 3) : -1;
+		}
+		if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || fraction < 0) {
+			return INVALID;
+		}
+		return millis + hour * 3600000L + minute * 60000L + second * 1000L + fraction;
+	}
+
+	/**
+	 * Checks if a text starts with a valid yyyy-MM-dd date
+	 *
+	 * @param text
+	 *            the text, at least 10 characters long
+	 * @return true if valid
+	 */
+	private static boolean isDate(String text) {
+		if (text.charAt(4) != '-' || text.charAt(7) != '-') {
+			return false;
+		}
+		int year = parseDigits(text, 0, 4);
+		int month = parseDigits(text, 5, 2);
+		int day = parseDigits(text, 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1) {
+			return false;
+		}
+		boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+		return day <= (month == 2 && leap ? 29 : DAYS_PER_MONTH[month - 1]);
+	}
+
+	/**
+	 * Parses a fixed number of digits
+	 *
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            the first digit
+	 * @param count
+	 *            the number of digits
+	 * @return the number, -1 if there is another character
+	 */
+	private static int parseDigits(String text, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Counts the days from 1970-01-01 to a date of the proleptic Gregorian
+	 * calendar
+	 *
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month, 1 to 12
+	 * @param day
+	 *            the day of the month
+	 * @return the number of days
+	 */
+	private static long daysSinceEpoch(int year, int month, int day) {
+		// Count years from March, so the leap day is the last day of the year
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+}
@@ -1,9 +1,11 @@
 package play.modules.elasticsearch.mapping;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 /**
  * Maps a model field to an Elastic Search index
@@ -40,4 +42,28 @@ public interface FieldMapper<M> {
 	 */
 	public boolean inflate(M model, Map<String, Object> map);
 
+	/**
+	 * Gets the document fields this mapper inflates from, relative to the
+	 * object holding the field
+	 * 
+	 * @return the document field names
+	 */
+	public List<String> getDocumentFields();
+
+	/**
+	 * Inflates a model from one of the document fields of this mapper, while
+	 * parsing the document. The parser is positioned on the field value and
+	 * must be left on its last token.
+	 * 
+	 * @param model
+	 * @param documentField
+	 *            the document field, one of {@link #getDocumentFields()}
+	 * @param parser
+	 * @return True if a value was inflated, false otherwise, when no value was
+	 *         present
+	 * @throws IOException
+	 */
+	public boolean inflate(M model, String documentField, XContentParser parser) throws IOException;
+
+
 }
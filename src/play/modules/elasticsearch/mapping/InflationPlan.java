@@ -0,0 +1,179 @@
+package play.modules.elasticsearch.mapping;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.ClassUtils;
+
+import play.Logger;
+import play.modules.elasticsearch.util.ExceptionUtil;
+import play.modules.elasticsearch.util.FieldAccessor;
+import play.modules.elasticsearch.util.FieldAccessorFactory;
+import play.modules.elasticsearch.util.ReflectionUtil;
+
+/**
+ * Everything needed to inflate instances of a class from an Elastic Search document, built once per class: a setter
+ * for every field, combining a field accessor with a converter specialized to the field type.
+ *
+ * <p>Fields are looked up by exact name first, then ignoring case. Fields of subclasses hide those of superclasses.
+ *
+ * @param <T>
+ *            the type to inflate
+ */
+public class InflationPlan<T> {
+
+	/** Plans by class */
+	private static final Map<Class<?>, InflationPlan<?>> plans = new ConcurrentHashMap<Class<?>, InflationPlan<?>>();
+
+	/** The class to inflate */
+	private final Class<T> clazz;
+
+	/** Setters by field name */
+	private final Map<String, FieldSetter> setters = new HashMap<String, FieldSetter>();
+
+	/** Setters by lower case field name */
+	private final Map<String, FieldSetter> settersIgnoreCase = new HashMap<String, FieldSetter>();
+
+	/**
+	 * Builds the plan of a class
+	 *
+	 * @param clazz
+	 *            the class to inflate
+	 */
+	private InflationPlan(Class<T> clazz) {
+		this.clazz = clazz;
+
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || setters.containsKey(field.getName())) {
+					continue;
+				}
+				FieldSetter setter = new FieldSetter(field);
+				setters.put(field.getName(), setter);
+				String lowerCaseName = field.getName().toLowerCase();
+				if (settersIgnoreCase.containsKey(lowerCaseName) == false) {
+					settersIgnoreCase.put(lowerCaseName, setter);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the plan of a class, building it if needed
+	 *
+	 * @param <T>
+	 *            the type to inflate
+	 * @param clazz
+	 *            the class to inflate
+	 * @return the plan
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> InflationPlan<T> forClass(Class<T> clazz) {
+		InflationPlan<T> plan = (InflationPlan<T>) plans.get(clazz);
+		if (plan == null) {
+			plan = new InflationPlan<T>(clazz);
+			plans.put(clazz, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Clears all plans, e.g. when the application classes have been reloaded
+	 */
+	public static void clearCache() {
+		plans.clear();
+	}
+
+	/**
+	 * Creates a new, empty instance
+	 *
+	 * @return the instance
+	 */
+	public T newInstance() {
+		return ReflectionUtil.newInstance(clazz);
+	}
+
+	/**
+	 * Gets the setter of a field
+	 *
+	 * @param name
+	 *            the field name
+	 * @return the setter, null if there is no such field
+	 */
+	public FieldSetter getSetter(String name) {
+		FieldSetter setter = setters.get(name);
+		if (setter == null) {
+			setter = settersIgnoreCase.get(name.toLowerCase());
+		}
+		return setter;
+	}
+
+	/**
+	 * Creates a new instance and sets every field found in a document
+	 *
+	 * @param map
+	 *            the document
+	 * @return the instance
+	 */
+	public T inflate(Map<String, Object> map) {
+		T instance = newInstance();
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			if (e.getValue() == null) {
+				continue;
+			}
+			FieldSetter setter = getSetter(e.getKey());
+			if (setter != null) {
+				setter.set(instance, e.getValue());
+			} else {
+				Logger.debug("No field %s in %s, skipping", e.getKey(), clazz.getName());
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets a field, converting the value to the field type
+	 */
+	public static class FieldSetter {
+
+		/** The field accessor */
+		private final FieldAccessor accessor;
+
+		/** Converts values to the field type */
+		private final ValueConverter converter;
+
+		/**
+		 * Instantiates a new setter
+		 *
+		 * @param field
+		 *            the field
+		 */
+		FieldSetter(Field field) {
+			this.accessor = FieldAccessorFactory.getAccessor(field);
+			this.converter = MappingUtil.getConverter(ClassUtils.primitiveToWrapper(field.getType()));
+		}
+
+		/**
+		 * Sets the field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param value
+		 *            the value, not null
+		 */
+		public void set(Object target, Object value) {
+			try {
+				accessor.set(target, converter.convert(value));
+			} catch (IllegalArgumentException e) {
+				Logger.error(ExceptionUtil.getStackTrace(e));
+			} catch (ClassCastException e) {
+				Logger.error(ExceptionUtil.getStackTrace(e));
+			}
+		}
+
+	}
+
+}
@@ -3,24 +3,40 @@ package play.modules.elasticsearch.mapping;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.Validate;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
 import org.joda.time.base.BaseLocal;
 
-import play.Logger;
 import play.modules.elasticsearch.annotations.ElasticSearchField;
 import play.modules.elasticsearch.annotations.ElasticSearchField.Index;
 import play.modules.elasticsearch.annotations.ElasticSearchField.Store;
 import play.modules.elasticsearch.annotations.ElasticSearchFieldDescriptor;
-import play.modules.elasticsearch.util.ExceptionUtil;
 
 public abstract class MappingUtil {
 
+	/** Converters by target type */
+	private static final Map<Class<?>, ValueConverter> converters = new ConcurrentHashMap<Class<?>, ValueConverter>();
+
+	/** Converter which returns values as they are */
+	private static final ValueConverter IDENTITY_CONVERTER = new ValueConverter() {
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	};
+
 	private MappingUtil() {
 		// No public instantiation allowed
 	}
@@ -169,97 +185,209 @@ public abstract class MappingUtil {
 	}
 
 	public static Object convertValue(final Object value, final Class<?> targetType) {
-		if (targetType.equals(value.getClass())) {
-			// Types match
-			return value;
+		return getConverter(targetType).convert(value);
+	}
+
+	/**
+	 * Gets a converter specialized to a target type, so the type checks are
+	 * only done once
+	 * 
+	 * @param targetType
+	 *            the target type
+	 * @return the converter
+	 */
+	public static ValueConverter getConverter(final Class<?> targetType) {
+		ValueConverter converter = converters.get(targetType);
+		if (converter == null) {
+			converter = createConverter(targetType);
+			// Don't hold on to application classes, which are replaced on reload
+			if (targetType.getClassLoader() == null) {
+				converters.put(targetType, converter);
+			}
+		}
+		return converter;
+	}
+
+	/**
+	 * Reads the value the parser is positioned on, producing the same types
+	 * as a source map would: objects become maps and arrays become lists
+	 * 
+	 * @param parser
+	 *            the parser, left on the last token of the value
+	 * @return the value, null for a null value
+	 * @throws IOException
+	 */
+	public static Object readValue(final XContentParser parser) throws IOException {
+		Token token = parser.currentToken();
+		switch (token) {
+		case VALUE_STRING:
+			return parser.text();
+		case VALUE_NUMBER:
+			switch (parser.numberType()) {
+			case INT:
+				return parser.intValue();
+			case LONG:
+				return parser.longValue();
+			case FLOAT:
+				return parser.floatValue();
+			default:
+				return parser.doubleValue();
+			}
+		case VALUE_BOOLEAN:
+			return parser.booleanValue();
+		case VALUE_EMBEDDED_OBJECT:
+			return parser.binaryValue();
+		case START_OBJECT:
+			Map<String, Object> map = new HashMap<String, Object>();
+			while (parser.nextToken() == Token.FIELD_NAME) {
+				String name = parser.currentName();
+				parser.nextToken();
+				map.put(name, readValue(parser));
+			}
+			return map;
+		case START_ARRAY:
+			List<Object> list = new ArrayList<Object>();
+			while (parser.nextToken() != Token.END_ARRAY) {
+				list.add(readValue(parser));
+			}
+			return list;
+		default:
+			return null;
 		}
+	}
+
 
-		// Types do not match, perform conversion where needed
+	/**
+	 * Creates a converter for a target type
+	 * 
+	 * @param targetType
+	 *            the target type
+	 * @return the converter
+	 */
+	private static ValueConverter createConverter(final Class<?> targetType) {
 		if (targetType.equals(String.class)) {
-			return value.toString();
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					return value.toString();
+				}
+			};
 		} else if (targetType.equals(BigDecimal.class)) {
-			return new BigDecimal(value.toString());
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					return new BigDecimal(value.toString());
+				}
+			};
 		} else if (targetType.equals(Date.class)) {
-			return convertToDate(value);
+			return DateConverters.DATE;
 		} else if (targetType.equals(LocalDateTime.class)) {
-			return LocalDateTime.parse(value.toString());
+			return DateConverters.LOCAL_DATE_TIME;
 		} else if (targetType.equals(LocalDate.class)) {
-			return LocalDate.parse(value.toString());
+			return DateConverters.LOCAL_DATE;
 
 			// Use Number intermediary where possible
 		} else if (targetType.equals(Integer.class)) {
-			if (value instanceof Number) {
-				return Integer.valueOf(((Number) value).intValue());
-			} else {
-				return Integer.valueOf(value.toString());
-			}
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Integer.valueOf(((Number) value).intValue());
+					} else {
+						return Integer.valueOf(value.toString());
+					}
+				}
+			};
 		} else if (targetType.equals(Long.class)) {
-			if (value instanceof Number) {
-				return Long.valueOf(((Number) value).longValue());
-			} else {
-				return Long.valueOf(value.toString());
-			}
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Long.valueOf(((Number) value).longValue());
+					} else {
+						return Long.valueOf(value.toString());
+					}
+				}
+			};
 		} else if (targetType.equals(Double.class)) {
-			if (value instanceof Number) {
-				return Double.valueOf(((Number) value).doubleValue());
-			} else {
-				return Double.valueOf(value.toString());
-			}
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Double.valueOf(((Number) value).doubleValue());
+					} else {
+						return Double.valueOf(value.toString());
+					}
+				}
+			};
 		} else if (targetType.equals(Float.class)) {
-			if (value instanceof Number) {
-				return Float.valueOf(((Number) value).floatValue());
-			} else {
-				return Float.valueOf(value.toString());
-			}
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Float.valueOf(((Number) value).floatValue());
+					} else {
+						return Float.valueOf(value.toString());
+					}
+				}
+			};
+		} else if (targetType.equals(Short.class)) {
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Short.valueOf(((Number) value).shortValue());
+					} else {
+						return Short.valueOf(value.toString());
+					}
+				}
+			};
+		} else if (targetType.equals(Byte.class)) {
+			return new TypedConverter(targetType) {
+				@Override
+				Object convertOther(Object value) {
+					if (value instanceof Number) {
+						return Byte.valueOf(((Number) value).byteValue());
+					} else {
+						return Byte.valueOf(value.toString());
+					}
+				}
+			};
 
 			// Fallback to simply returning the value
 		} else {
-			return value;
+			return IDENTITY_CONVERTER;
 		}
 	}
 
 	/**
-	 * Convert to date.
-	 * 
-	 * @param value
-	 *            the value
-	 * @return the date
+	 * Converter which returns values of the target type as they are
 	 */
-	private static Date convertToDate(Object value) {
-		Date date = null;
-		if (value != null && !"".equals(value)) {
-			if (value instanceof Long) {
-				date = new Date(((Long) value).longValue());
+	private static abstract class TypedConverter implements ValueConverter {
 
-			} else if (value instanceof String) {
-				String val = (String) value;
-				int dateLength = String.valueOf(Long.MAX_VALUE).length();
-				if (dateLength == val.length()) {
-					date = new Date(Long.valueOf(val).longValue());
-				} else {
-					date = getDate(val);
-				}
-			} else {
-				date = (Date) value;
-			}
+		private final Class<?> targetType;
+
+		TypedConverter(Class<?> targetType) {
+			this.targetType = targetType;
 		}
-		return date;
-	}
 
-	/**
-	 * Gets the date.
-	 * 
-	 * @param val
-	 *            the val
-	 * @return the date
-	 */
-	private static Date getDate(String val) {
-		try {
-			// Use ES internal converter
-			return XContentBuilder.defaultDatePrinter.parseDateTime(val).toDate();
-		} catch (Throwable t) {
-			Logger.error(ExceptionUtil.getStackTrace(t), val);
+		@Override
+		public Object convert(Object value) {
+			if (value.getClass() == targetType) {
+				// Types match
+				return value;
+			}
+			return convertOther(value);
 		}
-		return null;
+
+		/**
+		 * Converts a value of another type
+		 * 
+		 * @param value
+		 *            the value
+		 * @return the converted value
+		 */
+		abstract Object convertOther(Object value);
+
 	}
 }
@@ -1,9 +1,12 @@
 package play.modules.elasticsearch.mapping;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 /**
  * Maps a model to an Elastic Search index
@@ -63,6 +66,27 @@ public interface ModelMapper<M> {
 	 */
 	public void addModel(M model, XContentBuilder builder) throws IOException;
 
+	/**
+	 * Adds some fields of an instance of this model to the builder, as an
+	 * object holding only those fields. Used for partial updates, which are
+	 * only possible when every field is mapped to a single document field.
+	 * 
+	 * @param model
+	 *            an instance of this model
+	 * @param fieldNames
+	 *            the names of the model fields to add; fields which are not
+	 *            indexed are skipped
+	 * @param builder
+	 *            the builder
+	 * @return the document fields which have been added, or should be removed
+	 *         because their value is null; null if one of the fields cannot be
+	 *         added on its own
+	 * @throws IOException
+	 */
+	public List<String> addModelFields(M model, Collection<String> fieldNames, XContentBuilder builder)
+			throws IOException;
+
+
 	/**
 	 * Inflates a new model from a map of values
 	 * 
@@ -70,6 +94,17 @@ public interface ModelMapper<M> {
 	 * @return
 	 */
 	public M createModel(Map<String, Object> map);
+
+	/**
+	 * Inflates a new model while parsing a document, without building an
+	 * intermediate map
+	 * 
+	 * @param parser
+	 *            the parser, positioned before or on the start of the document
+	 * @return the model
+	 * @throws IOException
+	 */
+	public M createModel(XContentParser parser) throws IOException;
 	
 	/**
 	 * Adds a settings mapping based on this model to the builder
@@ -0,0 +1,103 @@
+package play.modules.elasticsearch.mapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+
+/**
+ * Inflates an object while parsing a document, by handing every document field to the {@link FieldMapper} which
+ * reads it. Unknown fields are skipped.
+ *
+ * @param <M>
+ *            the type of the object holding the fields
+ */
+public class StreamingInflater<M> {
+
+	/** Field mappers by document field */
+	private final Map<String, FieldMapper<M>> mappers = new HashMap<String, FieldMapper<M>>();
+
+	/** The document fields */
+	private final List<String> documentFields;
+
+	/**
+	 * Instantiates a new inflater
+	 *
+	 * @param fields
+	 *            the field mappers of the object
+	 */
+	public StreamingInflater(List<? extends FieldMapper<M>> fields) {
+		for (FieldMapper<M> field : fields) {
+			for (String documentField : field.getDocumentFields()) {
+				mappers.put(documentField, field);
+			}
+		}
+		documentFields = Collections.unmodifiableList(new ArrayList<String>(mappers.keySet()));
+	}
+
+	/**
+	 * Gets all document fields read by the field mappers
+	 *
+	 * @return the document field names
+	 */
+	public List<String> getDocumentFields() {
+		return documentFields;
+	}
+
+	/**
+	 * Inflates an object from the fields of a document object
+	 *
+	 * @param object
+	 *            the object to inflate
+	 * @param parser
+	 *            the parser, positioned before or on the start of the document object; left on its end
+	 * @return true if any value was inflated
+	 * @throws IOException
+	 */
+	public boolean inflate(M object, XContentParser parser) throws IOException {
+		Token token = parser.currentToken();
+		if (token == null) {
+			token = parser.nextToken();
+		}
+		if (token != Token.START_OBJECT) {
+			throw new MappingException("Expected an object but found " + token);
+		}
+
+		boolean nonNullValue = false;
+		while ((token = parser.nextToken()) == Token.FIELD_NAME) {
+			String name = parser.currentName();
+			parser.nextToken();
+			if (inflate(object, name, parser)) {
+				nonNullValue = true;
+			}
+		}
+		return nonNullValue;
+	}
+
+	/**
+	 * Inflates an object from a single document field
+	 *
+	 * @param object
+	 *            the object to inflate
+	 * @param documentField
+	 *            the document field
+	 * @param parser
+	 *            the parser, positioned on the field value; left on its last token
+	 * @return true if a value was inflated
+	 * @throws IOException
+	 */
+	public boolean inflate(M object, String documentField, XContentParser parser) throws IOException {
+		FieldMapper<M> mapper = mappers.get(documentField);
+		if (mapper == null) {
+			parser.skipChildren();
+			return false;
+		}
+		return mapper.inflate(object, documentField, parser);
+	}
+
+}
@@ -0,0 +1,19 @@
+package play.modules.elasticsearch.mapping;
+
+/**
+ * Converts values read from an Elastic Search document to the type of a model field
+ * 
+ * @see MappingUtil#getConverter(Class)
+ */
+public interface ValueConverter {
+
+	/**
+	 * Converts a value
+	 * 
+	 * @param value
+	 *            the value, not null
+	 * @return the converted value
+	 */
+	public Object convert(Object value);
+
+}
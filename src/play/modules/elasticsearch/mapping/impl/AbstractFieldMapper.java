@@ -1,13 +1,19 @@
 package play.modules.elasticsearch.mapping.impl;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
+
 
 import org.apache.commons.lang.Validate;
 
 import play.modules.elasticsearch.annotations.ElasticSearchFieldDescriptor;
 import play.modules.elasticsearch.mapping.FieldMapper;
+import play.modules.elasticsearch.mapping.InflationPlan;
+import play.modules.elasticsearch.mapping.InflationPlan.FieldSetter;
 import play.modules.elasticsearch.mapping.MappingUtil;
-import play.modules.elasticsearch.util.ReflectionUtil;
+import play.modules.elasticsearch.util.FieldAccessor;
+import play.modules.elasticsearch.util.FieldAccessorFactory;
 
 /**
  * Abstract base class for {@link FieldMapper}s
@@ -19,12 +25,16 @@ public abstract class AbstractFieldMapper<M> implements FieldMapper<M> {
 
 	protected final Field field;
 	protected final ElasticSearchFieldDescriptor meta;
+	protected final FieldAccessor accessor;
+	private final FieldSetter setter;
 	private final String prefix, indexField;
 
 	public AbstractFieldMapper(final Field field, String prefix) {
 		Validate.notNull(field, "field cannot be null");
 		this.field = field;
 		this.meta = new ElasticSearchFieldDescriptor(field);
+		this.accessor = FieldAccessorFactory.getAccessor(field);
+		this.setter = InflationPlan.forClass(field.getDeclaringClass()).getSetter(field.getName());
 		this.prefix = prefix;
 
 		// Maybe this a premature optimization, but getIndexField() will be
@@ -32,6 +42,17 @@ public abstract class AbstractFieldMapper<M> implements FieldMapper<M> {
 		indexField = prefix(field.getName());
 	}
 
+	/**
+	 * Gets the document fields this mapper inflates from, by default the index
+	 * field only
+	 * 
+	 * @return
+	 */
+	@Override
+	public List<String> getDocumentFields() {
+		return Collections.singletonList(indexField);
+	}
+
 	/**
 	 * Gets the prefix to use when indexing this field
 	 * 
@@ -105,7 +126,18 @@ public abstract class AbstractFieldMapper<M> implements FieldMapper<M> {
 	 * @return
 	 */
 	protected Object getFieldValue(M model) {
-		return ReflectionUtil.getFieldValue(model, field);
+		return accessor.get(model);
+	}
+
+	/**
+	 * Sets the value of the field we represent, converting it to the field
+	 * type if needed
+	 * 
+	 * @param model
+	 * @param value
+	 */
+	protected void setFieldValue(Object model, Object value) {
+		setter.set(model, value);
 	}
 
 }
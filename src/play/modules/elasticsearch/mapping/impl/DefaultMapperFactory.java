@@ -82,6 +82,9 @@ public class DefaultMapperFactory implements MapperFactory {
 		} else if (field.isAnnotationPresent(ElasticSearchEmbedded.class)) {
 			return new EmbeddedFieldMapper<M>(this, field, prefix);
 
+		} else if (PrimitiveFieldMapper.isSupported(field.getType())) {
+			return PrimitiveFieldMapper.create(field, prefix);
+
 		} else {
 			return new SimpleFieldMapper<M>(field, prefix);
 
@@ -7,12 +7,15 @@ import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
 
 import play.modules.elasticsearch.annotations.ElasticSearchEmbedded;
 import play.modules.elasticsearch.annotations.ElasticSearchEmbedded.Mode;
 import play.modules.elasticsearch.mapping.FieldMapper;
 import play.modules.elasticsearch.mapping.MapperFactory;
 import play.modules.elasticsearch.mapping.MappingException;
+import play.modules.elasticsearch.mapping.StreamingInflater;
 import play.modules.elasticsearch.util.ReflectionUtil;
 import scala.actors.threadpool.Arrays;
 
@@ -26,6 +29,7 @@ public class EmbeddedFieldMapper<M> extends AbstractFieldMapper<M> {
 
 	private final ElasticSearchEmbedded embed;
 	private final List<FieldMapper<Object>> fields;
+	private final StreamingInflater<Object> inflater;
 
 	public EmbeddedFieldMapper(MapperFactory factory, Field field, String prefix) {
 		super(field, prefix);
@@ -47,6 +51,7 @@ public class EmbeddedFieldMapper<M> extends AbstractFieldMapper<M> {
 		for (Field embeddedField : getFieldsToIndex(field.getType(), embed)) {
 			fields.add(factory.getMapper(embeddedField, embedPrefix));
 		}
+		inflater = new StreamingInflater<Object>(fields);
 	}
 
 	static List<Field> getFieldsToIndex(Class<?> clazz, ElasticSearchEmbedded meta) {
@@ -179,11 +184,48 @@ public class EmbeddedFieldMapper<M> extends AbstractFieldMapper<M> {
 		}
 
 		if (nonNullValue) {
-			ReflectionUtil.setFieldValue(model, name, value);
+			setFieldValue(model, value);
 			return true;
 		} else {
 			return false;
 		}
 	}
 
+	@Override
+	public List<String> getDocumentFields() {
+		if (embed.mode() == Mode.embedded) {
+			// Embedded fields are stored (prefixed) in the parent document
+			return inflater.getDocumentFields();
+		} else {
+			return super.getDocumentFields();
+		}
+	}
+
+	@Override
+	public boolean inflate(M model, String documentField, XContentParser parser) throws IOException {
+		switch (embed.mode()) {
+		case embedded:
+			// Fields arrive one by one, create the target on the first one
+			if (parser.currentToken() == Token.VALUE_NULL) {
+				return false;
+			}
+			Object value = getFieldValue(model);
+			if (value == null) {
+				value = ReflectionUtil.newInstance(getFieldType());
+				setFieldValue(model, value);
+			}
+			return inflater.inflate(value, documentField, parser);
+		default:
+			if (parser.currentToken() != Token.START_OBJECT) {
+				parser.skipChildren();
+				return false;
+			}
+			Object nested = ReflectionUtil.newInstance(getFieldType());
+			inflater.inflate(nested, parser);
+			setFieldValue(model, nested);
+			return true;
+		}
+	}
+
+
 }
@@ -3,6 +3,8 @@ package play.modules.elasticsearch.mapping.impl;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,6 +13,7 @@ import javax.persistence.Transient;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 import play.db.Model;
 import play.modules.elasticsearch.annotations.ElasticSearchIgnore;
@@ -21,8 +24,10 @@ import play.modules.elasticsearch.annotations.analysis.ElasticSearchAnalyzer;
 import play.modules.elasticsearch.annotations.analysis.ElasticSearchFilter;
 import play.modules.elasticsearch.annotations.analysis.ElasticSearchSetting;
 import play.modules.elasticsearch.mapping.FieldMapper;
+import play.modules.elasticsearch.mapping.InflationPlan;
 import play.modules.elasticsearch.mapping.MapperFactory;
 import play.modules.elasticsearch.mapping.ModelMapper;
+import play.modules.elasticsearch.mapping.StreamingInflater;
 import play.modules.elasticsearch.util.ReflectionUtil;
 
 /**
@@ -45,6 +50,9 @@ public class PlayModelMapper<M extends Model> implements ModelMapper<M> {
 	private final Class<M> clazz;
 	private final ElasticSearchable meta;
 	private final List<FieldMapper<M>> mapping;
+	private final InflationPlan<M> plan;
+	private final StreamingInflater<M> inflater;
+	private final Map<String, FieldMapper<M>> fieldsByName;
 
 	public PlayModelMapper(MapperFactory factory, Class<M> clazz) {
 		Validate.notNull(clazz, "Clazz cannot be null");
@@ -53,6 +61,28 @@ public class PlayModelMapper<M extends Model> implements ModelMapper<M> {
 
 		// Create mapping
 		mapping = getMapping(factory, clazz);
+		plan = InflationPlan.forClass(clazz);
+		inflater = new StreamingInflater<M>(mapping);
+		fieldsByName = getFieldsByName(mapping);
+	}
+
+	/**
+	 * Indexes field mappers by the name of their model field
+	 * 
+	 * @param mapping
+	 *            the field mappers
+	 * @return the field mappers by name, null if one of them is not an
+	 *         {@link AbstractFieldMapper} and its field is unknown
+	 */
+	private static <M> Map<String, FieldMapper<M>> getFieldsByName(List<FieldMapper<M>> mapping) {
+		Map<String, FieldMapper<M>> fieldsByName = new HashMap<String, FieldMapper<M>>();
+		for (FieldMapper<M> field : mapping) {
+			if (field instanceof AbstractFieldMapper == false) {
+				return null;
+			}
+			fieldsByName.put(((AbstractFieldMapper<?>) field).getFieldName(), field);
+		}
+		return fieldsByName;
 	}
 
 	static boolean shouldIgnoreField(Field field) {
@@ -221,9 +251,37 @@ public class PlayModelMapper<M extends Model> implements ModelMapper<M> {
 		builder.endObject();
 	}
 
+	@Override
+	public List<String> addModelFields(M model, Collection<String> fieldNames, XContentBuilder builder)
+			throws IOException {
+		if (fieldsByName == null) {
+			return null;
+		}
+
+		List<String> indexFields = new ArrayList<String>();
+		builder.startObject();
+
+		for (String fieldName : fieldNames) {
+			FieldMapper<M> field = fieldsByName.get(fieldName);
+			if (field == null) {
+				// Not indexed
+				continue;
+			}
+			if (field instanceof SimpleFieldMapper == false) {
+				// Embedded objects and collections are only indexed as a whole
+				return null;
+			}
+			field.addToDocument(model, builder);
+			indexFields.add(((SimpleFieldMapper<M>) field).getIndexField());
+		}
+
+		builder.endObject();
+		return indexFields;
+	}
+
 	@Override
 	public M createModel(Map<String, Object> map) {
-		M model = ReflectionUtil.newInstance(clazz);
+		M model = plan.newInstance();
 
 		for (FieldMapper<M> field : mapping) {
 			field.inflate(model, map);
@@ -232,4 +290,13 @@ public class PlayModelMapper<M extends Model> implements ModelMapper<M> {
 		return model;
 	}
 
+	@Override
+	public M createModel(XContentParser parser) throws IOException {
+		M model = plan.newInstance();
+		inflater.inflate(model, parser);
+
+		return model;
+	}
+
+
 }
@@ -0,0 +1,125 @@
+package play.modules.elasticsearch.mapping.impl;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Field mappers for primitive fields, which read the value without boxing it
+ * and write it with the matching typed builder method
+ *
+ * @param <M>
+ *            the generic model type which owns this field
+ */
+public abstract class PrimitiveFieldMapper<M> extends SimpleFieldMapper<M> {
+
+	PrimitiveFieldMapper(Field field, String prefix) {
+		super(field, prefix);
+	}
+
+	/**
+	 * Checks if there is a specialized mapper for a field type
+	 *
+	 * @param type
+	 *            the field type
+	 * @return true for all primitive types but char
+	 */
+	public static boolean isSupported(Class<?> type) {
+		return type.isPrimitive() && type != char.class;
+	}
+
+	/**
+	 * Creates a mapper for a primitive field
+	 *
+	 * @param <M>
+	 *            the model type
+	 * @param field
+	 *            the field
+	 * @param prefix
+	 *            the prefix to use in the index
+	 * @return the mapper, null if the field type is not supported
+	 */
+	public static <M> PrimitiveFieldMapper<M> create(Field field, String prefix) {
+		Class<?> type = field.getType();
+		if (type == int.class || type == short.class || type == byte.class) {
+			return new IntFieldMapper<M>(field, prefix);
+		} else if (type == long.class) {
+			return new LongFieldMapper<M>(field, prefix);
+		} else if (type == float.class) {
+			return new FloatFieldMapper<M>(field, prefix);
+		} else if (type == double.class) {
+			return new DoubleFieldMapper<M>(field, prefix);
+		} else if (type == boolean.class) {
+			return new BooleanFieldMapper<M>(field, prefix);
+		} else {
+			return null;
+		}
+	}
+
+	static class IntFieldMapper<M> extends PrimitiveFieldMapper<M> {
+
+		IntFieldMapper(Field field, String prefix) {
+			super(field, prefix);
+		}
+
+		@Override
+		public void addToDocument(M model, XContentBuilder builder) throws IOException {
+			builder.field(getIndexField(), accessor.getInt(model));
+		}
+
+	}
+
+	static class LongFieldMapper<M> extends PrimitiveFieldMapper<M> {
+
+		LongFieldMapper(Field field, String prefix) {
+			super(field, prefix);
+		}
+
+		@Override
+		public void addToDocument(M model, XContentBuilder builder) throws IOException {
+			builder.field(getIndexField(), accessor.getLong(model));
+		}
+
+	}
+
+	static class FloatFieldMapper<M> extends PrimitiveFieldMapper<M> {
+
+		FloatFieldMapper(Field field, String prefix) {
+			super(field, prefix);
+		}
+
+		@Override
+		public void addToDocument(M model, XContentBuilder builder) throws IOException {
+			builder.field(getIndexField(), accessor.getFloat(model));
+		}
+
+	}
+
+	static class DoubleFieldMapper<M> extends PrimitiveFieldMapper<M> {
+
+		DoubleFieldMapper(Field field, String prefix) {
+			super(field, prefix);
+		}
+
+		@Override
+		public void addToDocument(M model, XContentBuilder builder) throws IOException {
+			builder.field(getIndexField(), accessor.getDouble(model));
+		}
+
+	}
+
+	static class BooleanFieldMapper<M> extends PrimitiveFieldMapper<M> {
+
+		BooleanFieldMapper(Field field, String prefix) {
+			super(field, prefix);
+		}
+
+		@Override
+		public void addToDocument(M model, XContentBuilder builder) throws IOException {
+			builder.field(getIndexField(), accessor.getBoolean(model));
+		}
+
+	}
+
+}
@@ -1,9 +1,12 @@
 package play.modules.elasticsearch.mapping.impl;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 import play.db.Model;
 import play.modules.elasticsearch.mapping.ModelMapper;
@@ -46,10 +49,21 @@ public class UniversalModelMapper implements ModelMapper<Model> {
 		throw new UnsupportedOperationException("Unsupported call to UniversalModelMapper");
 	}
 
+	@Override
+	public List<String> addModelFields(final Model model, final Collection<String> fieldNames,
+			final XContentBuilder builder) throws IOException {
+		throw new UnsupportedOperationException("Unsupported call to UniversalModelMapper");
+	}
+
 	@Override
 	public Model createModel(final Map<String, Object> map) {
 		throw new UnsupportedOperationException("Model mapping is not supported with UniversalModelMapper");
 	}
+
+	@Override
+	public Model createModel(final XContentParser parser) throws IOException {
+		throw new UnsupportedOperationException("Model mapping is not supported with UniversalModelMapper");
+	}
 	
 	public void addSettings(XContentBuilder builder) throws IOException {
 		throw new UnsupportedOperationException("Model mapping is not supported with UniversalModelMapper");
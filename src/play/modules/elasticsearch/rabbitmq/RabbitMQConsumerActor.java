@@ -4,6 +4,7 @@ import play.Logger;
 import akka.actor.UntypedActor;
 import play.modules.elasticsearch.ElasticSearchIndexAction;
 import play.modules.elasticsearch.ElasticSearchIndexEvent;
+import play.modules.elasticsearch.InFlightIndexRequests;
 
 
 /**
@@ -11,6 +12,9 @@ import play.modules.elasticsearch.ElasticSearchIndexEvent;
  */
 public class RabbitMQConsumerActor extends UntypedActor {
 
+	/** Pending asynchronous requests, shared by all consumers */
+	private static final InFlightIndexRequests inFlight = new InFlightIndexRequests();
+
 	/**
 	 * Receive Message
 	 * 
@@ -26,9 +30,13 @@ public class RabbitMQConsumerActor extends UntypedActor {
 			// Get Index Event
 			ElasticSearchIndexEvent indexEvent = (ElasticSearchIndexEvent)o;
 			
-			// Fire Index Action
-			ElasticSearchIndexAction indexAction = new ElasticSearchIndexAction();
-			indexAction.invoke(indexEvent);
+			// Fire Index Action, keeping requests for the same document in order
+			if (ElasticSearchIndexAction.isAsync()) {
+				inFlight.send(indexEvent);
+			} else {
+				ElasticSearchIndexAction indexAction = new ElasticSearchIndexAction();
+				indexAction.invoke(indexEvent);
+			}
 			
 		} else {
 			// Log Debug
@@ -0,0 +1,64 @@
+package play.modules.elasticsearch.search;
+
+import java.util.List;
+
+/**
+ * Search results of a projection query: one row of field values per hit,
+ * instead of a model.
+ *
+ * @see play.modules.elasticsearch.Query#fields(String...)
+ */
+public class SearchRows {
+
+	/** The total count. */
+	public long totalCount;
+
+	/** The fields, in the order of the values of each row. */
+	public String[] fields;
+
+	/** The document ids (same order as the rows). */
+	public List<String> ids;
+
+	/** The rows, null values for missing fields and lists for fields with several values. */
+	public List<Object[]> rows;
+
+	/**
+	 * Instantiates new search rows.
+	 *
+	 * @param totalCount
+	 *            the total count
+	 * @param fields
+	 *            the fields
+	 * @param ids
+	 *            the document ids
+	 * @param rows
+	 *            the rows
+	 */
+	public SearchRows(long totalCount, String[] fields, List<String> ids, List<Object[]> rows) {
+		this.totalCount = totalCount;
+		this.fields = fields;
+		this.ids = ids;
+		this.rows = rows;
+	}
+
+	/**
+	 * Gets the value of a field
+	 *
+	 * @param row
+	 *            the row index
+	 * @param field
+	 *            the field
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the field was not requested
+	 */
+	public Object get(int row, String field) {
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i].equals(field)) {
+				return rows.get(row)[i];
+			}
+		}
+		throw new IllegalArgumentException("Field was not requested: " + field);
+	}
+
+}
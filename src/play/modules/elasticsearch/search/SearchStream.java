@@ -0,0 +1,185 @@
+package play.modules.elasticsearch.search;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+
+import play.db.Model;
+import play.db.jpa.JPA;
+import play.db.jpa.JPABase;
+import play.modules.elasticsearch.transformer.Transformer;
+
+/**
+ * Iterates over all results of a scan search, fetching and transforming one
+ * batch at a time through a scroll, so only a single batch is held in memory.
+ *
+ * <p>
+ * The search is sent when the first result is requested. Elastic Search
+ * cannot release a scroll before its keep alive expires, {@link #close()}
+ * stops fetching so the scroll expires after the last batch requested.
+ *
+ * <p>
+ * Hydrated entities are detached from the persistence context once the next
+ * batch is fetched, so changes to an entity have to be saved before moving on
+ * to the next batch.
+ *
+ * @param <T>
+ *            the generic model type
+ */
+public class SearchStream<T extends Model> implements Iterator<T>, Iterable<T> {
+
+	/** How long the scroll is kept between two batches */
+	public static final TimeValue KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+	private final Client client;
+	private final SearchRequestBuilder request;
+	private final Class<T> clazz;
+	private final Transformer<T> transformer;
+
+	/** The scroll id, null before the search and once done */
+	private String scrollId = null;
+
+	/** Detach the entities of a batch before fetching the next one */
+	private final boolean detach;
+
+	/** Results of the current batch */
+	private Iterator<T> batch = Collections.<T> emptyList().iterator();
+
+	/** Entities of the current batch, to be detached */
+	private List<T> entities = Collections.emptyList();
+
+	/** The total number of hits, -1 before the search */
+	private long totalHits = -1;
+
+	private boolean done = false;
+
+	/**
+	 * Creates a stream
+	 *
+	 * @param client
+	 *            the client
+	 * @param request
+	 *            the scan search request, with a scroll of {@link #KEEP_ALIVE}
+	 * @param clazz
+	 *            the model class
+	 * @param transformer
+	 *            transforms each batch
+	 * @param detach
+	 *            detach the entities of a batch before fetching the next one,
+	 *            if the transformer hydrates them
+	 */
+	public SearchStream(Client client, SearchRequestBuilder request, Class<T> clazz, Transformer<T> transformer,
+			boolean detach) {
+		this.client = client;
+		this.request = request;
+		this.clazz = clazz;
+		this.transformer = transformer;
+		this.detach = detach;
+	}
+
+	/**
+	 * Gets the total number of results, sending the search if needed
+	 *
+	 * @return the number of results
+	 */
+	public long getTotalHits() {
+		if (totalHits < 0 && done == false) {
+			start();
+		}
+		return Math.max(totalHits, 0);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (batch.hasNext() == false && done == false) {
+			if (totalHits < 0) {
+				start();
+			} else {
+				fetch();
+			}
+		}
+		return batch.hasNext();
+	}
+
+	@Override
+	public T next() {
+		if (hasNext() == false) {
+			throw new NoSuchElementException();
+		}
+		return batch.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Search results cannot be removed");
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	/**
+	 * Stops fetching results
+	 */
+	public void close() {
+		done = true;
+		scrollId = null;
+		batch = Collections.<T> emptyList().iterator();
+		detach();
+	}
+
+	/**
+	 * Sends the search. A scan search returns no hits, only the scroll id and
+	 * the total.
+	 */
+	private void start() {
+		SearchResponse searchResponse = request.execute().actionGet();
+		totalHits = searchResponse.hits().totalHits();
+		scrollId = searchResponse.scrollId();
+		if (totalHits == 0 || scrollId == null) {
+			close();
+		}
+	}
+
+	/**
+	 * Fetches the next batch
+	 */
+	private void fetch() {
+		detach();
+		SearchResponse searchResponse = client.prepareSearchScroll(scrollId).setScroll(KEEP_ALIVE).execute().actionGet();
+		scrollId = searchResponse.scrollId();
+		if (searchResponse.hits().hits().length == 0) {
+			close();
+			return;
+		}
+		List<T> objects = transformer.toSearchResults(searchResponse, clazz).objects;
+		if (detach) {
+			entities = objects;
+		}
+		batch = objects.iterator();
+	}
+
+	/**
+	 * Detaches the entities of the current batch, so the persistence context
+	 * does not grow with every batch
+	 */
+	private void detach() {
+		if (entities.isEmpty()) {
+			return;
+		}
+		for (T entity : entities) {
+			if (entity instanceof JPABase && JPA.em().contains(entity)) {
+				JPA.em().detach(entity);
+			}
+		}
+		entities = Collections.emptyList();
+	}
+
+}
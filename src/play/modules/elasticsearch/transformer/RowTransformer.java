@@ -0,0 +1,49 @@
+package play.modules.elasticsearch.transformer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import play.modules.elasticsearch.search.SearchRows;
+
+/**
+ * Transforms the fields of the hits of a projection query into rows, without
+ * reading the source or creating models
+ */
+public class RowTransformer {
+
+	/**
+	 * Transforms a {@link SearchResponse} into {@link SearchRows}
+	 * 
+	 * @param searchResponse
+	 *            the search response
+	 * @param fields
+	 *            the requested fields
+	 * @return the search rows
+	 */
+	public SearchRows toSearchRows(SearchResponse searchResponse, String[] fields) {
+		SearchHit[] hits = searchResponse.hits().hits();
+		List<String> ids = new ArrayList<String>(hits.length);
+		List<Object[]> rows = new ArrayList<Object[]>(hits.length);
+		for (SearchHit hit : hits) {
+			ids.add(hit.id());
+
+			Map<String, SearchHitField> hitFields = hit.fields();
+			Object[] row = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				SearchHitField field = hitFields != null ? hitFields.get(fields[i]) : null;
+				if (field != null) {
+					List<Object> values = field.values();
+					row[i] = values.size() == 1 ? values.get(0) : values;
+				}
+			}
+			rows.add(row);
+		}
+		return new SearchRows(searchResponse.hits().totalHits(), fields, ids, rows);
+	}
+
+}
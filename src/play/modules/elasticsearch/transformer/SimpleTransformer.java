@@ -28,8 +28,8 @@ import org.elasticsearch.search.SearchHit;
 import play.Logger;
 import play.db.Model;
 import play.modules.elasticsearch.ElasticSearchPlugin;
+import play.modules.elasticsearch.mapping.InflationPlan;
 import play.modules.elasticsearch.search.SearchResults;
-import play.modules.elasticsearch.util.ReflectionUtil;
 
 /**
  * The original transformer, as written by Felipe.
@@ -71,18 +71,14 @@ public class SimpleTransformer<T extends Model> implements Transformer<T> {
 			if (clazz.equals(Model.class)) {
 				hitClazz = (Class<T>) ElasticSearchPlugin.lookupModel(h.getType());
 			}
-			T o = ReflectionUtil.newInstance(hitClazz);
-			 
-			
+			InflationPlan<T> plan = InflationPlan.forClass(hitClazz);
 
 			// Get Data Map
 			Map<String, Object> map = h.sourceAsMap();
 			Logger.debug("Record Map: %s", map);
 
 			// Bind Data
-			for (Map.Entry<String, Object> e : map.entrySet()) {
-				ReflectionUtil.setFieldValue(o, e.getKey(), e.getValue());
-			}
+			T o = plan.inflate(map);
 
 			// Log Debug
 			Logger.debug("Model Instance: %s", o);
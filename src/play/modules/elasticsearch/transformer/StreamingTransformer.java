@@ -0,0 +1,106 @@
+package play.modules.elasticsearch.transformer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.BytesHolder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.SearchHit;
+
+import play.Logger;
+import play.db.Model;
+import play.exceptions.UnexpectedException;
+import play.modules.elasticsearch.ElasticSearchPlugin;
+import play.modules.elasticsearch.mapping.ModelMapper;
+import play.modules.elasticsearch.search.SearchResults;
+
+/**
+ * Transformer which uses the mapper, like {@link MapperTransformer}, but
+ * inflates models while parsing the source of each hit instead of building a
+ * source map first.
+ *
+ * @param <T>
+ *            the generic type
+ */
+public class StreamingTransformer<T extends Model> implements Transformer<T> {
+
+	/**
+	 * To search results.
+	 *
+	 * @param searchResponse
+	 *            the search response
+	 * @param clazz
+	 *            the clazz
+	 * @return the search results
+	 */
+	@Override
+	public SearchResults<T> toSearchResults(SearchResponse searchResponse, Class<T> clazz) {
+		// Get Total Records Found
+		long count = searchResponse.hits().totalHits();
+
+		// Init List
+		List<T> objects = new ArrayList<T>();
+		List<Float> scores = new ArrayList<Float>();
+		List<Object[]> sortValues = new ArrayList<Object[]>();
+
+		Class<T> hitClazz = clazz;
+		ModelMapper<T> mapper = ElasticSearchPlugin.getMapper(hitClazz);
+
+		// Loop on each one
+		for (SearchHit h : searchResponse.hits()) {
+			if (clazz.equals(play.db.Model.class)) {
+				@SuppressWarnings("unchecked")
+				Class<T> modelClazz = (Class<T>) ElasticSearchPlugin.lookupModel(h.getType());
+				hitClazz = modelClazz;
+				mapper = ElasticSearchPlugin.getMapper(hitClazz);
+			}
+
+			T o = createModel(mapper, h);
+
+			// Log Debug
+			if (Logger.isDebugEnabled()) {
+				Logger.debug("Model Instance: %s", o);
+			}
+			objects.add(o);
+			scores.add(h.score());
+			sortValues.add(h.sortValues());
+		}
+
+		// Return Results
+		return new SearchResults<T>(count, objects, scores, sortValues, searchResponse.facets());
+	}
+
+	/**
+	 * Inflates a model from the source of a hit
+	 *
+	 * @param mapper
+	 *            the model mapper
+	 * @param hit
+	 *            the hit
+	 * @return the model
+	 */
+	static <T> T createModel(ModelMapper<T> mapper, SearchHit hit) {
+		if (hit.isSourceEmpty()) {
+			return mapper.createModel(Collections.<String, Object> emptyMap());
+		}
+
+		BytesHolder source = hit.sourceRef();
+		XContentParser parser = null;
+		try {
+			parser = XContentFactory.xContent(source.bytes(), source.offset(), source.length()).createParser(
+					source.bytes(), source.offset(), source.length());
+			return mapper.createModel(parser);
+		} catch (IOException e) {
+			throw new UnexpectedException("Could not parse the source of " + hit.getId(), e);
+		} finally {
+			if (parser != null) {
+				parser.close();
+			}
+		}
+	}
+
+}
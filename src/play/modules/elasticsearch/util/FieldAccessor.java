@@ -0,0 +1,74 @@
+package play.modules.elasticsearch.util;
+
+/**
+ * Reads and writes a single field of an object
+ *
+ * @see FieldAccessorFactory
+ */
+public interface FieldAccessor {
+
+	/**
+	 * Gets the value of the field
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value, primitives are boxed
+	 */
+	public Object get(Object target);
+
+	/**
+	 * Gets the value of an int, short or byte field without boxing
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value
+	 */
+	public int getInt(Object target);
+
+	/**
+	 * Gets the value of a long field without boxing
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value
+	 */
+	public long getLong(Object target);
+
+	/**
+	 * Gets the value of a float field without boxing
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value
+	 */
+	public float getFloat(Object target);
+
+	/**
+	 * Gets the value of a double field without boxing
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value
+	 */
+	public double getDouble(Object target);
+
+	/**
+	 * Gets the value of a boolean field without boxing
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @return the value
+	 */
+	public boolean getBoolean(Object target);
+
+	/**
+	 * Sets the value of the field
+	 *
+	 * @param target
+	 *            the object holding the field
+	 * @param value
+	 *            the value, which must be assignable to the field type
+	 */
+	public void set(Object target, Object value);
+
+}
@@ -0,0 +1,476 @@
+package play.modules.elasticsearch.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.StringUtils;
+
+import play.Logger;
+import play.Play;
+import play.classloading.enhancers.Enhancer;
+
+/**
+ * Creates {@link FieldAccessor}s.
+ *
+ * <p>For every class declaring mapped fields, a {@link ClassAccessor} which reads and writes its fields directly is
+ * generated with Javassist the first time one of its fields is requested. Generated accessors are defined in the
+ * package and class loader of the declaring class, so they can access all but its private fields.
+ *
+ * <p>Private fields, final fields (for writing) and classes for which generation fails are accessed through
+ * reflection instead.
+ */
+public abstract class FieldAccessorFactory {
+
+	/** Generated accessors by declaring class, or the class itself if generation failed */
+	private static final Map<Class<?>, Object> generatedAccessors = new ConcurrentHashMap<Class<?>, Object>();
+
+	/** Makes generated class names unique within a class loader */
+	private static final AtomicInteger generatedCount = new AtomicInteger();
+
+	/** Return types of the primitive getters of generated accessors */
+	private static final Class<?>[] PRIMITIVE_TYPES = { int.class, long.class, float.class, double.class, boolean.class };
+
+	/**
+	 * Gets an accessor for a field
+	 *
+	 * @param field
+	 *            the field
+	 * @return the accessor
+	 */
+	public static FieldAccessor getAccessor(Field field) {
+		if (Modifier.isPrivate(field.getModifiers()) == false && Modifier.isStatic(field.getModifiers()) == false) {
+			Object generated = getGeneratedAccessor(field.getDeclaringClass());
+			if (generated instanceof ClassAccessor) {
+				ClassAccessor classAccessor = (ClassAccessor) generated;
+				Integer index = classAccessor.indices.get(field.getName());
+				if (index != null) {
+					return new GeneratedFieldAccessor(classAccessor, index, field);
+				}
+			}
+		}
+		return new ReflectionFieldAccessor(field);
+	}
+
+	/**
+	 * Checks if an accessor uses a generated class accessor instead of reflection
+	 *
+	 * @param accessor
+	 *            the accessor
+	 * @return true if generated
+	 */
+	public static boolean isGenerated(FieldAccessor accessor) {
+		return accessor instanceof GeneratedFieldAccessor;
+	}
+
+	/**
+	 * Clears the generated accessors, e.g. when the application classes have been reloaded
+	 */
+	public static void clearCache() {
+		generatedAccessors.clear();
+	}
+
+	/**
+	 * Gets the generated accessor of a class, generating it if needed
+	 *
+	 * @param clazz
+	 *            the class declaring the fields
+	 * @return the accessor, or the class if no accessor could be generated
+	 */
+	private static Object getGeneratedAccessor(Class<?> clazz) {
+		Object generated = generatedAccessors.get(clazz);
+		if (generated == null) {
+			synchronized (generatedAccessors) {
+				generated = generatedAccessors.get(clazz);
+				if (generated == null) {
+					try {
+						generated = generate(clazz);
+					} catch (Throwable t) {
+						Logger.debug("Using reflection to access fields of %s: %s", clazz.getName(), t);
+						generated = clazz;
+					}
+					generatedAccessors.put(clazz, generated);
+				}
+			}
+		}
+		return generated;
+	}
+
+	/**
+	 * Generates the accessor of a class
+	 *
+	 * @param clazz
+	 *            the class declaring the fields
+	 * @return the accessor
+	 * @throws Exception
+	 *             if the accessor could not be generated
+	 */
+	private static ClassAccessor generate(Class<?> clazz) throws Exception {
+		ClassLoader loader = clazz.getClassLoader();
+		if (loader == null) {
+			throw new IllegalArgumentException("no class loader");
+		}
+
+		// Index the fields which can be accessed from the package of the class
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		StringBuilder getter = new StringBuilder();
+		StringBuilder setter = new StringBuilder();
+		StringBuilder[] primitiveGetters = new StringBuilder[PRIMITIVE_TYPES.length];
+		for (int i = 0; i < primitiveGetters.length; i++) {
+			primitiveGetters[i] = new StringBuilder();
+		}
+		String className = getSourceName(clazz);
+		for (Field field : clazz.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || field.isSynthetic()) {
+				continue;
+			}
+
+			int index = indices.size();
+			indices.put(field.getName(), index);
+			String target = "((" + className + ") target)." + field.getName();
+			getter.append("if (index == ").append(index).append(") return ").append(box(field.getType(), target)).append(";\n");
+			int primitive = ArrayUtils.indexOf(PRIMITIVE_TYPES, getPrimitiveGetterType(field.getType()));
+			if (primitive >= 0) {
+				primitiveGetters[primitive].append("if (index == ").append(index).append(") return ").append(target)
+						.append(";\n");
+			}
+			if (Modifier.isFinal(modifiers) == false) {
+				setter.append("if (index == ").append(index).append(") { ").append(target).append(" = ")
+						.append(unbox(field.getType(), "value")).append("; return; }\n");
+			}
+		}
+		if (indices.isEmpty()) {
+			throw new IllegalArgumentException("no accessible fields");
+		}
+
+		ClassPool pool = Play.classes != null ? Enhancer.newClassPool() : new ClassPool(true);
+		pool.appendClassPath(new LoaderClassPath(loader));
+		pool.appendClassPath(new LoaderClassPath(ClassAccessor.class.getClassLoader()));
+
+		CtClass ctClass = pool.makeClass(clazz.getName() + "$ElasticSearchAccessor" + generatedCount.incrementAndGet());
+		ctClass.setSuperclass(pool.get(ClassAccessor.class.getName()));
+		ctClass.addMethod(CtNewMethod.make("public Object get(Object target, int index) {\n" + getter
+				+ "throw new IllegalArgumentException(\"Unknown field \" + index);\n}", ctClass));
+		ctClass.addMethod(CtNewMethod.make("public void set(Object target, int index, Object value) {\n" + setter
+				+ "throw new IllegalArgumentException(\"Unknown field \" + index);\n}", ctClass));
+		for (int i = 0; i < PRIMITIVE_TYPES.length; i++) {
+			String type = PRIMITIVE_TYPES[i].getName();
+			ctClass.addMethod(CtNewMethod.make("public " + type + " get" + StringUtils.capitalize(type)
+					+ "(Object target, int index) {\n" + primitiveGetters[i]
+					+ "throw new IllegalArgumentException(\"Unknown " + type + " field \" + index);\n}", ctClass));
+		}
+
+		Class<?> generatedClass = ctClass.toClass(loader, clazz.getProtectionDomain());
+		ctClass.detach();
+
+		ClassAccessor accessor = (ClassAccessor) generatedClass.getDeclaredConstructor().newInstance();
+		accessor.indices = indices;
+		return accessor;
+	}
+
+	/**
+	 * Gets the name of a type as it would be written in source code
+	 *
+	 * @param type
+	 *            the type
+	 * @return the name
+	 */
+	private static String getSourceName(Class<?> type) {
+		if (type.isArray()) {
+			return getSourceName(type.getComponentType()) + "[]";
+		}
+		return type.getName();
+	}
+
+	/**
+	 * Gets the primitive getter to use for a type, widening short and byte to int
+	 *
+	 * @param type
+	 *            the field type
+	 * @return the primitive type returned by the getter, null if there is none
+	 */
+	private static Class<?> getPrimitiveGetterType(Class<?> type) {
+		if (type == short.class || type == byte.class) {
+			return int.class;
+		}
+		return type;
+	}
+
+	/**
+	 * Boxes an expression of a given type
+	 *
+	 * @param type
+	 *            the type of the expression
+	 * @param expression
+	 *            the expression
+	 * @return the boxed expression
+	 */
+	private static String box(Class<?> type, String expression) {
+		if (type.isPrimitive()) {
+			return ClassUtils.primitiveToWrapper(type).getName() + ".valueOf(" + expression + ")";
+		}
+		return expression;
+	}
+
+	/**
+	 * Casts and unboxes an Object expression to a given type
+	 *
+	 * @param type
+	 *            the target type
+	 * @param expression
+	 *            the expression
+	 * @return the unboxed expression
+	 */
+	private static String unbox(Class<?> type, String expression) {
+		if (type.isPrimitive()) {
+			return "((" + ClassUtils.primitiveToWrapper(type).getName() + ") " + expression + ")." + type.getName() + "Value()";
+		}
+		return "(" + getSourceName(type) + ") " + expression;
+	}
+
+	/**
+	 * Base class of generated accessors, which access the fields of one class by index. Public so generated classes in
+	 * other packages can extend it.
+	 */
+	public static abstract class ClassAccessor {
+
+		/** Field indices by field name */
+		Map<String, Integer> indices;
+
+		/**
+		 * Gets the value of a field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value, primitives are boxed
+		 */
+		public abstract Object get(Object target, int index);
+
+		/**
+		 * Gets the value of an int, short or byte field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value
+		 */
+		public abstract int getInt(Object target, int index);
+
+		/**
+		 * Gets the value of a long field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value
+		 */
+		public abstract long getLong(Object target, int index);
+
+		/**
+		 * Gets the value of a float field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value
+		 */
+		public abstract float getFloat(Object target, int index);
+
+		/**
+		 * Gets the value of a double field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value
+		 */
+		public abstract double getDouble(Object target, int index);
+
+		/**
+		 * Gets the value of a boolean field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @return the value
+		 */
+		public abstract boolean getBoolean(Object target, int index);
+
+		/**
+		 * Sets the value of a field
+		 *
+		 * @param target
+		 *            the object holding the field
+		 * @param index
+		 *            the field index
+		 * @param value
+		 *            the value
+		 */
+		public abstract void set(Object target, int index, Object value);
+
+	}
+
+	/**
+	 * Accessor for a field of a generated class accessor
+	 */
+	private static class GeneratedFieldAccessor implements FieldAccessor {
+
+		/** The class accessor */
+		private final ClassAccessor accessor;
+
+		/** The field index */
+		private final int index;
+
+		/** Used to write final fields */
+		private final ReflectionFieldAccessor finalAccessor;
+
+		GeneratedFieldAccessor(ClassAccessor accessor, int index, Field field) {
+			this.accessor = accessor;
+			this.index = index;
+			this.finalAccessor = Modifier.isFinal(field.getModifiers()) ? new ReflectionFieldAccessor(field) : null;
+		}
+
+		@Override
+		public Object get(Object target) {
+			return accessor.get(target, index);
+		}
+
+		@Override
+		public int getInt(Object target) {
+			return accessor.getInt(target, index);
+		}
+
+		@Override
+		public long getLong(Object target) {
+			return accessor.getLong(target, index);
+		}
+
+		@Override
+		public float getFloat(Object target) {
+			return accessor.getFloat(target, index);
+		}
+
+		@Override
+		public double getDouble(Object target) {
+			return accessor.getDouble(target, index);
+		}
+
+		@Override
+		public boolean getBoolean(Object target) {
+			return accessor.getBoolean(target, index);
+		}
+
+		@Override
+		public void set(Object target, Object value) {
+			if (finalAccessor != null) {
+				finalAccessor.set(target, value);
+			} else {
+				accessor.set(target, index, value);
+			}
+		}
+
+	}
+
+	/**
+	 * Accessor using reflection
+	 */
+	private static class ReflectionFieldAccessor implements FieldAccessor {
+
+		/** The field */
+		private final Field field;
+
+		ReflectionFieldAccessor(Field field) {
+			this.field = field;
+			field.setAccessible(true);
+		}
+
+		@Override
+		public Object get(Object target) {
+			try {
+				return field.get(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return null;
+			}
+		}
+
+		@Override
+		public int getInt(Object target) {
+			try {
+				return field.getInt(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return 0;
+			}
+		}
+
+		@Override
+		public long getLong(Object target) {
+			try {
+				return field.getLong(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return 0;
+			}
+		}
+
+		@Override
+		public float getFloat(Object target) {
+			try {
+				return field.getFloat(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return 0;
+			}
+		}
+
+		@Override
+		public double getDouble(Object target) {
+			try {
+				return field.getDouble(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return 0;
+			}
+		}
+
+		@Override
+		public boolean getBoolean(Object target) {
+			try {
+				return field.getBoolean(target);
+			} catch (IllegalAccessException e) {
+				Logger.warn(ExceptionUtil.getStackTrace(e));
+				return false;
+			}
+		}
+
+		@Override
+		public void set(Object target, Object value) {
+			try {
+				field.set(target, value);
+			} catch (IllegalAccessException e) {
+				Logger.error(ExceptionUtil.getStackTrace(e));
+			}
+		}
+
+	}
+
+}
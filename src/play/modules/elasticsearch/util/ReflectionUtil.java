@@ -31,6 +31,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import play.Logger;
+import play.modules.elasticsearch.mapping.InflationPlan;
 import play.modules.elasticsearch.mapping.MappingUtil;
 
 /**
@@ -58,6 +59,8 @@ public abstract class ReflectionUtil {
 		annotationFieldsCache.clear();
 		classFieldsCache.clear();
 		classConstructorCache.clear();
+		FieldAccessorFactory.clearCache();
+		InflationPlan.clearCache();
 	}
 
 	/**
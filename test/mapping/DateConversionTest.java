@@ -0,0 +1,52 @@
+package mapping;
+
+import java.util.Date;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import play.modules.elasticsearch.mapping.MappingUtil;
+import play.modules.elasticsearch.mapping.ValueConverter;
+
+/**
+ * Test for the conversion of date values read from Elastic Search
+ */
+public class DateConversionTest extends MappingTest {
+
+	@Test
+	public void testDate() {
+		ValueConverter converter = MappingUtil.getConverter(Date.class);
+		long[] samples = { 1L, 1000000000000L, 1338508800000L, 951782400000L, -86400001L, 253402300799999L };
+		for (long millis : samples) {
+			Date date = new Date(millis);
+			String printed = XContentBuilder.defaultDatePrinter.print(millis);
+			assertEquals(printed, date, converter.convert(printed));
+			assertEquals(date, converter.convert(millis));
+			// Numbers with fewer than 5 digits are parsed as years
+			if (Math.abs(millis) >= 10000) {
+				assertEquals(date, converter.convert(String.valueOf(millis)));
+			}
+		}
+
+		assertEquals(new Date(1338508800000L), converter.convert("2012-06-01"));
+		assertEquals(new Date(1338552732000L), converter.convert("2012-06-01T12:12:12Z"));
+
+		// Other formats go through the Joda parser
+		assertEquals(new Date(1338545532123L), converter.convert("2012-06-01T12:12:12.123+02:00"));
+		assertNull(converter.convert(""));
+	}
+
+	@Test
+	public void testLocalDates() {
+		LocalDateTime dateTime = new LocalDateTime(2012, 2, 29, 23, 59, 58, 7);
+		assertEquals(dateTime, MappingUtil.getConverter(LocalDateTime.class).convert(dateTime.toString()));
+		assertEquals(new LocalDateTime(2012, 2, 29, 23, 59),
+				MappingUtil.getConverter(LocalDateTime.class).convert("2012-02-29T23:59"));
+
+		LocalDate date = new LocalDate(2012, 2, 29);
+		assertEquals(date, MappingUtil.getConverter(LocalDate.class).convert(date.toString()));
+	}
+
+}
@@ -0,0 +1,46 @@
+package mapping;
+
+import org.junit.Test;
+
+import play.modules.elasticsearch.DocumentFingerprints;
+
+/**
+ * Test for the fingerprints of indexed documents
+ */
+public class DocumentFingerprintsTest extends MappingTest {
+
+	private static boolean update(DocumentFingerprints fingerprints, String id, String source) {
+		byte[] bytes = source.getBytes();
+		return fingerprints.update("index", "type", id, bytes, 0, bytes.length);
+	}
+
+	@Test
+	public void testUnchanged() {
+		DocumentFingerprints fingerprints = new DocumentFingerprints(16);
+		assertFalse(update(fingerprints, "1", "{\"name\":\"a\"}"));
+		assertTrue(update(fingerprints, "1", "{\"name\":\"a\"}"));
+		assertFalse(update(fingerprints, "1", "{\"name\":\"b\"}"));
+		assertFalse(update(fingerprints, "2", "{\"name\":\"b\"}"));
+
+		fingerprints.remove("index", "type", "1");
+		assertFalse(update(fingerprints, "1", "{\"name\":\"b\"}"));
+
+		assertEquals(2, fingerprints.getHitCount());
+		assertEquals(3, fingerprints.getMissCount());
+		assertEquals(1, fingerprints.getSkipCount());
+	}
+
+	@Test
+	public void testBounded() {
+		DocumentFingerprints fingerprints = new DocumentFingerprints(10);
+		assertEquals(16, fingerprints.getCapacity());
+		for (int i = 0; i < 1000; i++) {
+			assertFalse(update(fingerprints, String.valueOf(i), "{}"));
+		}
+		assertTrue(update(fingerprints, "999", "{}"));
+
+		fingerprints.clear();
+		assertFalse(update(fingerprints, "999", "{}"));
+	}
+
+}
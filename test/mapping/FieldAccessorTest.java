@@ -0,0 +1,75 @@
+package mapping;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+
+import org.junit.Test;
+
+import play.db.jpa.Model;
+import play.modules.elasticsearch.annotations.ElasticSearchable;
+import play.modules.elasticsearch.util.FieldAccessor;
+import play.modules.elasticsearch.util.FieldAccessorFactory;
+import play.modules.elasticsearch.util.ReflectionUtil;
+
+/**
+ * Tests for generated field accessors
+ */
+public class FieldAccessorTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	@ElasticSearchable
+	public static class WideModel extends Model {
+		public String s1 = "a", s2 = "b", s3 = "c", s4 = "d", s5 = "e", s6 = "f", s7 = "g", s8 = "h";
+		public int i1 = 1, i2 = 2, i3 = 3, i4 = 4, i5 = 5, i6 = 6, i7 = 7, i8 = 8;
+		public long l1 = 1, l2 = 2, l3 = 3, l4 = 4;
+		public double d1 = 1.5, d2 = 2.5, d3 = 3.5, d4 = 4.5;
+		public Integer n1 = 1, n2 = 2, n3 = 3, n4 = 4;
+		public boolean b1 = true, b2 = false;
+		public Date date = new Date(0);
+		protected short protectedShort = 7;
+		private String privateString = "private";
+	}
+
+	@Test
+	public void testAccessorsMatchReflection() throws Exception {
+		WideModel model = new WideModel();
+		for (Field field : WideModel.class.getDeclaredFields()) {
+			field.setAccessible(true);
+			FieldAccessor accessor = FieldAccessorFactory.getAccessor(field);
+			assertEquals(field.getName(), field.get(model), accessor.get(model));
+
+			// Only private fields fall back to reflection
+			assertEquals(field.getName(), Modifier.isPrivate(field.getModifiers()) == false,
+					FieldAccessorFactory.isGenerated(accessor));
+		}
+	}
+
+	@Test
+	public void testSet() throws Exception {
+		WideModel model = new WideModel();
+		FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("s1")).set(model, "changed");
+		FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("i1")).set(model, 42);
+		FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("protectedShort")).set(model, (short) 3);
+		FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("privateString")).set(model, "changed");
+		FieldAccessorFactory.getAccessor(Model.class.getDeclaredField("id")).set(model, 5L);
+
+		assertEquals("changed", model.s1);
+		assertEquals(42, model.i1);
+		assertEquals(3, model.protectedShort);
+		assertEquals("changed", ReflectionUtil.getFieldValue(model, "privateString"));
+		assertEquals(Long.valueOf(5), model.id);
+	}
+
+	@Test
+	public void testPrimitiveGetters() throws Exception {
+		WideModel model = new WideModel();
+		assertEquals(3, FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("i3")).getInt(model));
+		assertEquals(7, FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("protectedShort")).getInt(model));
+		assertEquals(4L, FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("l4")).getLong(model));
+		assertEquals(2.5, FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("d2")).getDouble(model), 0);
+		assertTrue(FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("b1")).getBoolean(model));
+		assertFalse(FieldAccessorFactory.getAccessor(WideModel.class.getDeclaredField("b2")).getBoolean(model));
+	}
+
+}
@@ -0,0 +1,92 @@
+package mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.db.jpa.Model;
+import play.modules.elasticsearch.ElasticSearchIndexEvent;
+import play.modules.elasticsearch.IndexEventJournal;
+import play.modules.elasticsearch.IndexEventJournal.Segment;
+
+/**
+ * Test for the write-ahead log of index events
+ */
+public class IndexEventJournalTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	public static class JournaledModel extends Model {
+		public String name;
+	}
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static ElasticSearchIndexEvent event(String id) {
+		return new ElasticSearchIndexEvent(JournaledModel.class, id, ElasticSearchIndexEvent.Type.INDEX);
+	}
+
+	private static int count(Map<Segment, List<ElasticSearchIndexEvent>> recovered) {
+		int count = 0;
+		for (List<ElasticSearchIndexEvent> events : recovered.values()) {
+			count += events.size();
+		}
+		return count;
+	}
+
+	@Test
+	public void testAcknowledgedNotRecovered() throws IOException {
+		IndexEventJournal journal = new IndexEventJournal(directory, 4096, false);
+		assertTrue(journal.recover().isEmpty());
+		journal.acknowledge(journal.append(event("1")));
+		journal.acknowledge(journal.append(event("2")));
+
+		// Reopen without sealing, as after a crash
+		assertTrue(new IndexEventJournal(directory, 4096, false).recover().isEmpty());
+	}
+
+	@Test
+	public void testPendingRecovered() throws IOException {
+		IndexEventJournal journal = new IndexEventJournal(directory, 4096, false);
+		journal.recover();
+		journal.acknowledge(journal.append(event("long document id")));
+		journal.append(event("3"));
+
+		// The shorter record overwrote the acknowledged one
+		Map<Segment, List<ElasticSearchIndexEvent>> recovered = new IndexEventJournal(directory, 4096, false).recover();
+		assertEquals(1, count(recovered));
+		assertEquals("3", recovered.values().iterator().next().get(0).getDocumentId());
+	}
+
+	@Test
+	public void testSealed() throws IOException {
+		IndexEventJournal journal = new IndexEventJournal(directory, 4096, false);
+		journal.recover();
+		journal.acknowledge(journal.append(event("1")));
+		journal.seal();
+		assertEquals(0, directory.listFiles().length);
+	}
+
+}
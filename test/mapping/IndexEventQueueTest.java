@@ -0,0 +1,89 @@
+package mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import play.db.jpa.Model;
+import play.modules.elasticsearch.ElasticSearchIndexEvent;
+import play.modules.elasticsearch.IndexEventQueue;
+import play.modules.elasticsearch.IndexEventQueue.OverflowPolicy;
+
+/**
+ * Test for the overflow policies of the index queue
+ */
+public class IndexEventQueueTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	public static class QueuedModel extends Model {
+		public String name;
+	}
+
+	/**
+	 * Event which counts how often it was marked as processed
+	 */
+	private static class CountingEvent extends ElasticSearchIndexEvent {
+
+		private final AtomicInteger processed = new AtomicInteger();
+
+		CountingEvent(String id) {
+			super(QueuedModel.class, id, Type.INDEX);
+		}
+
+		@Override
+		public void processed() {
+			processed.incrementAndGet();
+		}
+
+		@Override
+		public Runnable getProcessedCallback() {
+			return new Runnable() {
+				@Override
+				public void run() {
+					processed();
+				}
+			};
+		}
+
+	}
+
+	@Test
+	public void testDropOldestMarksProcessed() throws InterruptedException {
+		IndexEventQueue queue = new IndexEventQueue(1, OverflowPolicy.DROP_OLDEST, null);
+		CountingEvent first = new CountingEvent("1");
+		CountingEvent second = new CountingEvent("2");
+		queue.put(first);
+		queue.put(second);
+
+		assertEquals(1, first.processed.get());
+		assertSame(second, queue.take());
+		assertEquals(0, second.processed.get());
+	}
+
+	@Test
+	public void testSpillKeepsProcessedCallback() throws InterruptedException, IOException {
+		File spillFile = File.createTempFile("queue", ".spill");
+		try {
+			IndexEventQueue queue = new IndexEventQueue(1, OverflowPolicy.SPILL, spillFile);
+			CountingEvent first = new CountingEvent("1");
+			CountingEvent second = new CountingEvent("2");
+			queue.put(first);
+			queue.put(second);
+			assertEquals(2, queue.size());
+
+			assertSame(first, queue.take());
+			ElasticSearchIndexEvent spilled = queue.take();
+			assertEquals("2", spilled.getDocumentId());
+			assertEquals(0, second.processed.get());
+
+			// The event read back acknowledges the spilled one
+			spilled.processed();
+			assertEquals(1, second.processed.get());
+		} finally {
+			spillFile.delete();
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package mapping;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import play.db.jpa.Model;
+import play.modules.elasticsearch.ModelRegistry;
+import play.modules.elasticsearch.annotations.ElasticSearchable;
+import play.modules.elasticsearch.mapping.ModelMapper;
+import play.modules.elasticsearch.mapping.impl.DefaultMapperFactory;
+
+/**
+ * Test for the registry of searchable models
+ */
+public class ModelRegistryTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	@ElasticSearchable
+	public static class SearchableModel extends Model {
+		public String name;
+	}
+
+	@SuppressWarnings("serial")
+	public static class SearchableSubclass extends SearchableModel {
+		public String other;
+	}
+
+	@SuppressWarnings("serial")
+	public static class PlainModel extends Model {
+		public String name;
+	}
+
+	private static ModelRegistry createRegistry() {
+		List<Class<?>> classes = Arrays.<Class<?>> asList(SearchableModel.class, SearchableSubclass.class,
+				PlainModel.class);
+		return new ModelRegistry(classes, new DefaultMapperFactory());
+	}
+
+	@Test
+	public void testIsSearchable() {
+		ModelRegistry registry = createRegistry();
+		assertEquals(2, registry.getModels().size());
+		assertTrue(registry.isSearchable(SearchableModel.class));
+		assertTrue(registry.isSearchable(SearchableSubclass.class));
+		assertFalse(registry.isSearchable(PlainModel.class));
+		assertFalse(registry.isSearchable(String.class));
+	}
+
+	@Test
+	public void testMappersAndLookup() {
+		ModelRegistry registry = createRegistry();
+		ModelMapper<SearchableModel> mapper = registry.getMapper(SearchableModel.class);
+		assertSame(mapper, registry.getMapper(SearchableModel.class));
+		assertEquals(SearchableModel.class, registry.lookupModel(mapper.getTypeName()));
+		assertEquals(SearchableSubclass.class,
+				registry.lookupModel(registry.getMapper(SearchableSubclass.class).getTypeName()));
+		assertNull(registry.lookupModel("unknown"));
+	}
+
+}
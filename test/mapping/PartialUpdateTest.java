@@ -0,0 +1,95 @@
+package mapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.junit.Test;
+
+import play.db.jpa.Model;
+import play.modules.elasticsearch.adapter.ElasticSearchAdapter;
+import play.modules.elasticsearch.annotations.ElasticSearchIgnore;
+import play.modules.elasticsearch.annotations.ElasticSearchable;
+import play.modules.elasticsearch.mapping.ModelMapper;
+
+/**
+ * Test for the fields written by partial updates
+ */
+public class PartialUpdateTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	@ElasticSearchable
+	public static class CounterModel extends Model {
+		public String status;
+		public int views;
+		public String description;
+		public List<String> tags = new ArrayList<String>();
+
+		@ElasticSearchIgnore
+		public String internal;
+	}
+
+	@Test
+	public void testSimpleFields() throws IOException {
+		ModelMapper<CounterModel> mapper = getMapper(CounterModel.class);
+		CounterModel model = new CounterModel();
+		model.status = "open";
+		model.views = 12;
+
+		XContentBuilder builder = builder();
+		List<String> fields = mapper.addModelFields(model, Arrays.asList("status", "views", "description", "internal"),
+				builder);
+
+		// Null fields are returned so they can be removed, ignored fields are skipped
+		assertEquals(Arrays.asList("status", "views", "description"), fields);
+
+		XContentBuilder expected = builder();
+		expected.startObject();
+		expected.field("status", "open");
+		expected.field("views", 12);
+		expected.endObject();
+		assertEquals(expected.string(), builder.string());
+	}
+
+	@Test
+	public void testCollectionField() throws IOException {
+		ModelMapper<CounterModel> mapper = getMapper(CounterModel.class);
+		assertNull(mapper.addModelFields(new CounterModel(), Arrays.asList("views", "tags"), builder()));
+	}
+
+	@Test
+	public void testUpdateScript() {
+		Map<String, Object> changes = new LinkedHashMap<String, Object>();
+		changes.put("status", "open");
+		changes.put("description", null);
+		changes.put("views", 12);
+
+		Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+		String script = ElasticSearchAdapter.createUpdateScript(changes, parameters);
+
+		// Null values remove the field, the others are passed as parameters
+		assertEquals("ctx._source['status'] = p0; ctx._source.remove('description'); ctx._source['views'] = p1; ",
+				script);
+		Map<String, Object> expected = new LinkedHashMap<String, Object>();
+		expected.put("p0", "open");
+		expected.put("p1", 12);
+		assertEquals(expected, parameters);
+	}
+
+	@Test
+	public void testUpdateScriptReused() {
+		Map<String, Object> changes = new LinkedHashMap<String, Object>();
+		changes.put("views", 12);
+		Map<String, Object> otherChanges = new LinkedHashMap<String, Object>();
+		otherChanges.put("views", 13);
+
+		// The same fields give the same script, so it is compiled once
+		assertEquals(ElasticSearchAdapter.createUpdateScript(changes, new LinkedHashMap<String, Object>()),
+				ElasticSearchAdapter.createUpdateScript(otherChanges, new LinkedHashMap<String, Object>()));
+	}
+
+}
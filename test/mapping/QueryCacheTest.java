@@ -0,0 +1,57 @@
+package mapping;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.junit.Test;
+
+import play.modules.elasticsearch.QueryCache;
+
+/**
+ * Test for the cache of query responses
+ */
+public class QueryCacheTest extends MappingTest {
+
+	@Test
+	public void testLeastRecentlyUsed() {
+		long now = System.currentTimeMillis();
+		QueryCache cache = new QueryCache(2, 60000);
+		SearchResponse first = new SearchResponse();
+		cache.put("index", "{1}", first, now);
+		cache.put("index", "{2}", new SearchResponse(), now);
+		assertSame(first, cache.get("index", "{1}", now));
+		assertNull(cache.get("other", "{1}", now));
+
+		// The second query is the least recently used one
+		cache.put("index", "{3}", new SearchResponse(), now);
+		assertNull(cache.get("index", "{2}", now));
+		assertSame(first, cache.get("index", "{1}", now));
+
+		// Time to live
+		assertNull(cache.get("index", "{1}", now + 60000));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		long now = System.currentTimeMillis();
+		QueryCache cache = new QueryCache(10, 60000);
+		cache.put("index", "{}", new SearchResponse(), now);
+		cache.put("other", "{}", new SearchResponse(), now);
+
+		cache.invalidate("index");
+		assertNull(cache.get("index", "{}", now));
+		assertNotNull(cache.get("other", "{}", now));
+
+		// Not kept until the index has been refreshed
+		cache.put("index", "{}", new SearchResponse(), now);
+		assertNull(cache.get("index", "{}", now));
+		SearchResponse refreshed = new SearchResponse();
+		cache.put("index", "{}", refreshed, now + 5000);
+		assertSame(refreshed, cache.get("index", "{}", now + 5000));
+
+		cache.invalidateAll();
+		assertNull(cache.get("other", "{}", now + 5000));
+	}
+
+}
@@ -0,0 +1,49 @@
+package mapping;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHitField;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.Test;
+
+import play.modules.elasticsearch.search.SearchRows;
+import play.modules.elasticsearch.transformer.RowTransformer;
+
+/**
+ * Test for the rows of projection queries
+ */
+public class RowTransformerTest extends MappingTest {
+
+	private static InternalSearchHit hit(int docId, String id, Object name, Object... tags) {
+		Map<String, SearchHitField> fields = new HashMap<String, SearchHitField>();
+		fields.put("name", new InternalSearchHitField("name", Arrays.asList(name)));
+		if (tags.length > 0) {
+			fields.put("tags", new InternalSearchHitField("tags", Arrays.asList(tags)));
+		}
+		return new InternalSearchHit(docId, id, "type", null, fields);
+	}
+
+	@Test
+	public void testRows() {
+		InternalSearchHit[] hits = { hit(0, "1", "first", "a", "b"), hit(1, "2", "second") };
+		SearchResponse response = new SearchResponse(new InternalSearchResponse(new InternalSearchHits(hits, 10, 1f),
+				null, false), null, 1, 1, 1, new ShardSearchFailure[0]);
+
+		SearchRows rows = new RowTransformer().toSearchRows(response, new String[] { "name", "tags" });
+		assertEquals(10, rows.totalCount);
+		assertEquals(Arrays.asList("1", "2"), rows.ids);
+		assertEquals(2, rows.rows.size());
+		assertEquals("first", rows.get(0, "name"));
+		assertEquals(Arrays.asList("a", "b"), rows.get(0, "tags"));
+		assertEquals("second", rows.get(1, "name"));
+		assertNull(rows.get(1, "tags"));
+	}
+
+}
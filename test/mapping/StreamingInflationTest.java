@@ -0,0 +1,195 @@
+package mapping;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.junit.Test;
+
+import play.Logger;
+import play.db.jpa.Model;
+import play.modules.elasticsearch.annotations.ElasticSearchEmbedded;
+import play.modules.elasticsearch.annotations.ElasticSearchEmbedded.Mode;
+import play.modules.elasticsearch.annotations.ElasticSearchable;
+import play.modules.elasticsearch.mapping.ModelMapper;
+
+/**
+ * Tests inflating models while parsing, against inflating them from source
+ * maps, including a benchmark of both
+ */
+public class StreamingInflationTest extends MappingTest {
+
+	@SuppressWarnings("serial")
+	@ElasticSearchable
+	public static class Order extends Model {
+		public String name;
+		public int quantity;
+		public Double price;
+		public Date created;
+		public boolean paid;
+
+		@ElasticSearchEmbedded
+		public Address shipping;
+
+		@ElasticSearchEmbedded(mode = Mode.object)
+		public Address billing;
+
+		public List<String> tags = new ArrayList<String>();
+
+		@ElasticSearchEmbedded
+		public List<Line> lines = new ArrayList<Line>();
+	}
+
+	public static class Address {
+		public String street;
+		public String city;
+	}
+
+	public static class Line {
+		public String product;
+		public Integer amount;
+	}
+
+	/**
+	 * Creates an order with the given number of lines
+	 */
+	private static Order createOrder(int lineCount) {
+		Order order = new Order();
+		order.id = 5L;
+		order.name = "order";
+		order.quantity = 3;
+		order.price = 12.5;
+		order.created = new Date(1000000000000L);
+		order.paid = true;
+		order.shipping = new Address();
+		order.shipping.street = "Main Street";
+		order.shipping.city = "Springfield";
+		order.billing = new Address();
+		order.billing.city = "Shelbyville";
+		order.tags.add("a");
+		order.tags.add("b");
+		for (int i = 0; i < lineCount; i++) {
+			Line line = new Line();
+			line.product = "product " + i;
+			line.amount = i;
+			order.lines.add(line);
+		}
+		return order;
+	}
+
+	/**
+	 * Serializes a model as the indexer does
+	 */
+	private static <M> byte[] toSource(ModelMapper<M> mapper, M model) throws IOException {
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		mapper.addModel(model, builder);
+		return builder.copiedBytes();
+	}
+
+	private static <M> M createFromMap(ModelMapper<M> mapper, byte[] source) {
+		Map<String, Object> map = XContentHelper.convertToMap(source, 0, source.length, false).v2();
+		return mapper.createModel(map);
+	}
+
+	private static <M> M createFromParser(ModelMapper<M> mapper, byte[] source) throws IOException {
+		XContentParser parser = XContentFactory.xContent(source).createParser(source);
+		try {
+			return mapper.createModel(parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	@Test
+	public void testSameAsMap() throws IOException {
+		ModelMapper<Order> mapper = getMapper(Order.class);
+		byte[] source = toSource(mapper, createOrder(3));
+
+		Order expected = createFromMap(mapper, source);
+		Order actual = createFromParser(mapper, source);
+
+		assertEquals(Long.valueOf(5), actual.id);
+		assertEquals(expected.name, actual.name);
+		assertEquals(expected.quantity, actual.quantity);
+		assertEquals(expected.price, actual.price);
+		assertEquals(expected.created, actual.created);
+		assertEquals(expected.paid, actual.paid);
+		assertEquals(expected.shipping.street, actual.shipping.street);
+		assertEquals(expected.shipping.city, actual.shipping.city);
+		assertEquals(expected.billing.street, actual.billing.street);
+		assertEquals(expected.billing.city, actual.billing.city);
+		assertEquals(expected.tags, actual.tags);
+		assertEquals(3, actual.lines.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(expected.lines.get(i).product, actual.lines.get(i).product);
+			assertEquals(expected.lines.get(i).amount, actual.lines.get(i).amount);
+		}
+	}
+
+	@Test
+	public void testUnknownAndNullFields() throws IOException {
+		ModelMapper<Order> mapper = getMapper(Order.class);
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		builder.startObject();
+		builder.field("name", "order");
+		builder.startObject("unknown").field("name", "other").endObject();
+		builder.nullField("shipping.city");
+		builder.field("quantity", 2);
+		builder.endObject();
+
+		Order order = createFromParser(mapper, builder.copiedBytes());
+		assertEquals("order", order.name);
+		assertEquals(2, order.quantity);
+		assertNull(order.shipping);
+	}
+
+	/**
+	 * Inflates a page of orders with nested lines from source maps and while
+	 * parsing, and logs the time taken by both
+	 */
+	@Test
+	public void benchmarkInflation() throws IOException {
+		ModelMapper<Order> mapper = getMapper(Order.class);
+		byte[] source = toSource(mapper, createOrder(20));
+		int iterations = 20000;
+
+		// Warm up both paths
+		inflateFromMap(mapper, source, iterations);
+		inflateFromParser(mapper, source, iterations);
+
+		long start = System.nanoTime();
+		int mapCount = inflateFromMap(mapper, source, iterations);
+		long mapNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int parserCount = inflateFromParser(mapper, source, iterations);
+		long parserNanos = System.nanoTime() - start;
+
+		assertEquals(mapCount, parserCount);
+		Logger.info("Inflating %s documents of %s bytes: source map %sms, parser %sms (%.1fx)", iterations,
+				source.length, mapNanos / 1000000, parserNanos / 1000000, (double) mapNanos / Math.max(parserNanos, 1));
+	}
+
+	private static int inflateFromMap(ModelMapper<Order> mapper, byte[] source, int iterations) {
+		int count = 0;
+		for (int i = 0; i < iterations; i++) {
+			count += createFromMap(mapper, source).lines.size();
+		}
+		return count;
+	}
+
+	private static int inflateFromParser(ModelMapper<Order> mapper, byte[] source, int iterations) throws IOException {
+		int count = 0;
+		for (int i = 0; i < iterations; i++) {
+			count += createFromParser(mapper, source).lines.size();
+		}
+		return count;
+	}
+
+}